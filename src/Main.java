@@ -2,12 +2,22 @@ import easyaccept.EasyAccept;
 
 public class Main {
     public static void main(String[] args) {
+        // Todos os arquivos rodam na mesma fachada; cada par _1/_2 confere, no _2, o que o
+        // encerrarSistema do _1 gravou, e o sistema reaberto segue com journal e checkpoints próprios
         args = new String[] {
                 "br.ufal.ic.p2.myfood.Facade",
-                "testes/us5_1.txt", "testes/us5_2.txt",
-                "testes/us6_1.txt", "testes/us6_2.txt",
-                "testes/us7_1.txt", "testes/us7_2.txt",
-                "testes/us8_1.txt", "testes/us8_2.txt",
+                "testes/us1_1.txt", "testes/us1_2.txt",
+                "testes/us2_1.txt", "testes/us2_2.txt",
+                "testes/us3_1.txt", "testes/us3_2.txt",
+                "testes/us4_1.txt", "testes/us4_2.txt",
+                "testes/empresas_unicidade.txt",
+                "testes/entregadores_placa.txt",
+                "testes/snapshot_ida_volta_1.txt", "testes/snapshot_ida_volta_2.txt",
+                "testes/pedidos_cliente_1.txt", "testes/pedidos_cliente_2.txt",
+                "testes/pedidos_estados_1.txt", "testes/pedidos_estados_2.txt",
+                "testes/produtos_busca.txt",
+                "testes/produtos_cardapio.txt",
+                "testes/empresas_facetas.txt",
         };
         EasyAccept.main(args);
     }
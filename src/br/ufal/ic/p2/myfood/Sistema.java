@@ -8,47 +8,275 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 
 public class Sistema {
 
     private Map<Integer, Usuario> usuarios;
     private Map<String, Usuario> usuariosPorEmail;
+    // Chave: placa normalizada por Entregador.normalizarPlaca
+    private Map<String, Entregador> entregadoresPorPlaca;
     private Map<Integer, Empresa> empresas;
     private Map<Integer, List<Empresa>> empresasPorDono;
+    // Empresas de cada nome em ordem de criação, de qualquer dono
+    private Map<String, List<Empresa>> empresasPorNome;
+    // Chave: Snapshot.chaveNomeEndereco(nome, endereco); o par é único entre todas as empresas
+    private Map<List<String>, Empresa> empresaPorNomeEndereco;
+    // Bitmaps dos IDs das empresas por tipo, cozinha, tipo de mercado e abertura 24 horas
+    private FacetasEmpresas facetasEmpresas;
     private Map<Integer, Produto> produtos;
     private Map<Integer, List<Produto>> produtosPorRestaurante;
+    // Produtos de cada empresa pelo nome; com nomes repetidos (após editarProduto), o de menor ID
+    private Map<Integer, Map<String, Produto>> produtoPorNome;
+    // Índice invertido das palavras do nome e da categoria dos produtos de todas as empresas
+    private BuscaProdutos buscaProdutos;
+    // Produtos de cada empresa em ordem de valor, no cardápio inteiro e por categoria
+    private CardapioPrecos cardapioPrecos;
     private Map<Integer, Pedido> pedidos;
     private Map<Integer, List<Pedido>> pedidosPorRestaurante;
-    private Map<Integer, List<Empresa>> empresasPorEntregador;
+    // Pedido em aberto de cada cliente em cada empresa, pela chave Snapshot.chaveClienteEmpresa
+    private Map<Long, Pedido> pedidoAbertoPorClienteEmpresa;
+    // Números dos pedidos de cada cliente, inclusive os arquivados
+    private HistoricoPedidos historicoPedidos;
+    // Empresas de cada entregador, por ID, na ordem de cadastro; o outro lado fica em cada Empresa
+    private Map<Integer, Map<Integer, Empresa>> empresasPorEntregador;
     private Map<Integer, Entrega> entregas;
+    private Map<Integer, Entrega> entregaPorPedido;
+    // Pedidos de cada estado, no total e por empresa, inclusive os arquivados
+    private EstadosPedidos estadosPedidos;
+    // Pedidos prontos de cada empresa (grupos "pronto" de estadosPedidos), na ordem em que obterPedido os oferece
+    private Despacho despacho;
+    private JournalSave journal;
+    private CheckpointSave checkpoints;
+    // Pedidos entregues (e suas entregas) tirados da memória e gravados em segmentos no disco
+    private ArquivoSave arquivo;
+    private final ConsultaEntidades consulta = new ConsultaEntidades() {
+        @Override
+        public Pedido buscarPedido(int numero) {
+            return buscarPedidoOuArquivado(numero);
+        }
+
+        @Override
+        public Usuario buscarUsuario(int id) {
+            return usuarios.get(id);
+        }
+
+        @Override
+        public Empresa buscarEmpresa(int id) {
+            return empresas.get(id);
+        }
+    };
+    // Entradas alteradas desde o último checkpoint, inclusive as reaplicadas do journal
+    private final Alteracoes alteracoes = new Alteracoes();
+    private Map<String, Long> temposCarregamento;
+    private String recuperacao;
+
+    // Início, no journal, dos registros posteriores a sistema.dat; só o checkpoint o usa
+    private long posicaoBase;
+    // Deltas acumulados antes de o checkpoint voltar a gravar um snapshot completo
+    private static final int MAX_DELTAS = 8;
+    // Comparada no login quando o email não existe
+    private static final String SENHA_INEXISTENTE = "\0";
+    // Pedidos entregues em memória a partir dos quais o checkpoint os move para o arquivo (0 desativa)
+    private static final int LIMITE_ARQUIVO = Integer.getInteger("myfood.arquivo.limite", 1000);
+    // Incrementado por zerarSistema, para que um arquivamento em andamento saiba que foi descartado
+    private int geracao;
 
     public Sistema() throws IOException, ClassNotFoundException {
-        this.usuarios = UsuarioSave.carregarUsuarios();
-        this.usuariosPorEmail = new HashMap<>();
-        this.empresas = EmpresasSave.carregarEmpresas();
-        this.empresasPorDono = EmpresasPorDonoSave.carregarEmpresaPorDono();
-        this.produtos = ProdutoSave.carregarProdutos();
-        this.produtosPorRestaurante = ProdutoPorRestauranteSave.carregarProdutoPorRestaurante();
-        this.pedidos = PedidoSave.carregarPedidos();
-        this.pedidosPorRestaurante = PedidoPorRestauranteSave.carregarPedidosPorRestaurante();
-        this.empresasPorEntregador = EmpresaPorEntregadorSave.carregarEmpresaPorEntregador();
-        this.entregas = EntregaSave.carregarEntregas();
-    }
-
-    public void zerarSistema(){
+        Snapshot snapshot = SistemaSave.carregarSnapshot();
+        this.usuarios = snapshot.getUsuarios();
+        this.usuariosPorEmail = snapshot.getUsuariosPorEmail();
+        this.entregadoresPorPlaca = snapshot.getEntregadoresPorPlaca();
+        this.empresas = snapshot.getEmpresas();
+        this.empresasPorDono = snapshot.getEmpresasPorDono();
+        this.empresasPorNome = snapshot.getEmpresasPorNome();
+        this.empresaPorNomeEndereco = snapshot.getEmpresaPorNomeEndereco();
+        this.facetasEmpresas = snapshot.getFacetasEmpresas();
+        this.produtos = snapshot.getProdutos();
+        this.produtosPorRestaurante = snapshot.getProdutosPorRestaurante();
+        this.produtoPorNome = snapshot.getProdutoPorNome();
+        this.buscaProdutos = snapshot.getBuscaProdutos();
+        this.cardapioPrecos = snapshot.getCardapioPrecos();
+        this.pedidos = snapshot.getPedidos();
+        this.pedidosPorRestaurante = snapshot.getPedidosPorRestaurante();
+        this.pedidoAbertoPorClienteEmpresa = snapshot.getPedidoAbertoPorClienteEmpresa();
+        this.historicoPedidos = snapshot.getHistoricoPedidos();
+        this.empresasPorEntregador = snapshot.getEmpresasPorEntregador();
+        this.entregas = snapshot.getEntregas();
+        this.entregaPorPedido = snapshot.getEntregaPorPedido();
+        this.estadosPedidos = snapshot.getEstadosPedidos();
+        this.despacho = snapshot.getDespacho();
+
+        // Restaura os contadores de ID e reaplica o que foi registrado no journal depois do snapshot
+        Usuario.setContadorId(snapshot.getContadorUsuarios());
+        Empresa.setContadorId(snapshot.getContadorEmpresas());
+        Produto.setIdCounter(snapshot.getContadorProdutos());
+        Pedido.setContador(snapshot.getContadorPedidos());
+
+        // O que ainda está no snapshot prevalece sobre a cópia arquivada (queda entre o segmento e o snapshot)
+        this.arquivo = ArquivoSave.abrir();
+        this.arquivo.ignorarAtivos(pedidos.keySet(), entregas.keySet());
+        if (arquivo.getQuantidadePedidos() > 0) {
+            arquivo.paraCadaPedido((idCliente, idEmpresa, numero) -> {
+                historicoPedidos.registrar(idCliente, idEmpresa, numero);
+                estadosPedidos.adicionar(idEmpresa, numero, "entregue"); // Só pedidos entregues são arquivados
+            });
+            historicoPedidos.ordenar();
+        }
+        // O contador de entregas não é gravado: continua do maior ID em memória ou no arquivo
+        Entrega.setContador(Math.max(snapshot.getMaiorIdEntrega(), arquivo.getMaiorEntrega()));
+
+        JournalSave.Recuperacao recuperacao = JournalSave.recuperar(snapshot.getSequenciaJournal(),
+                snapshot.getSequenciaBase(), this::reproduzir);
+        this.journal = JournalSave.abrir(recuperacao);
+        this.posicaoBase = recuperacao.getPosicaoBase();
+
+        this.temposCarregamento = snapshot.getTemposCarregamento();
+        this.temposCarregamento.put("journal", recuperacao.getNanos());
+        this.recuperacao = "{journal=" + String.format(Locale.US, "%.3f", recuperacao.getNanos() / 1_000_000.0)
+                + ", registros=" + recuperacao.getRegistrosAplicados()
+                + ", journalDescartado=" + recuperacao.getBytesDescartados()
+                + ", registrosPerdidos=" + recuperacao.getRegistrosPerdidos()
+                + ", deltasDescartados=" + snapshot.getDeltasDescartados()
+                + ", snapshotDescartado=" + snapshot.getBytesDescartados()
+                + ", snapshotAnterior=" + snapshot.isBaseAnterior() + "}";
+
+        this.checkpoints = CheckpointSave.iniciar(this::checkpoint);
+    }
+
+    // Tempo de cada etapa da inicialização, em milissegundos, no formato "{etapa=tempo, ...}"
+    public String getTemposCarregamento() {
+        StringJoiner resultado = new StringJoiner(", ", "{", "}");
+        for (Map.Entry<String, Long> tempo : temposCarregamento.entrySet()) {
+            resultado.add(tempo.getKey() + "=" + String.format(Locale.US, "%.3f", tempo.getValue() / 1_000_000.0));
+        }
+        return resultado.toString();
+    }
+
+    /**
+     * Resultado da recuperação na inicialização: tempo de leitura do journal (ms), registros
+     * reaplicados e bytes descartados por estarem incompletos ou corrompidos, no journal e nos deltas.
+     */
+    public String getRecuperacao() {
+        return recuperacao;
+    }
+
+    // Reaplica uma operação do journal chamando o mesmo método que a gerou
+    private void reproduzir(JournalSave.Registro registro) throws IOException {
+        Object[] a = registro.getArgumentos();
+        try {
+            switch (registro.getOperacao()) {
+                case ZERAR_SISTEMA:
+                    zerarSistema();
+                    break;
+                case CRIAR_CLIENTE:
+                    criarUsuario((String) a[0], (String) a[1], (String) a[2], (String) a[3]);
+                    break;
+                case CRIAR_DONO:
+                    criarUsuario((String) a[0], (String) a[1], (String) a[2], (String) a[3], (String) a[4]);
+                    break;
+                case CRIAR_ENTREGADOR:
+                    criarUsuario((String) a[0], (String) a[1], (String) a[2], (String) a[3], (String) a[4], (String) a[5]);
+                    break;
+                case CADASTRAR_ENTREGADOR:
+                    cadastrarEntregador((Integer) a[0], (Integer) a[1]);
+                    break;
+                case CRIAR_RESTAURANTE:
+                    criarEmpresa((String) a[0], (Integer) a[1], (String) a[2], (String) a[3], (String) a[4]);
+                    break;
+                case CRIAR_MERCADO:
+                    criarEmpresa((String) a[0], (Integer) a[1], (String) a[2], (String) a[3], (String) a[4],
+                            (String) a[5], (String) a[6]);
+                    break;
+                case CRIAR_FARMACIA:
+                    criarEmpresa((String) a[0], (Integer) a[1], (String) a[2], (String) a[3], (Boolean) a[4], (Integer) a[5]);
+                    break;
+                case ALTERAR_FUNCIONAMENTO:
+                    alterarFuncionamento((Integer) a[0], (String) a[1], (String) a[2]);
+                    break;
+                case CRIAR_PRODUTO:
+                    criarProduto((Integer) a[0], (String) a[1], (Float) a[2], (String) a[3]);
+                    break;
+                case EDITAR_PRODUTO:
+                    editarProduto((Integer) a[0], (String) a[1], (Float) a[2], (String) a[3]);
+                    break;
+                case CRIAR_PEDIDO:
+                    criarPedido((Integer) a[0], (Integer) a[1]);
+                    break;
+                case ADICIONAR_PRODUTO:
+                    adicionarProduto((Integer) a[0], (Integer) a[1]);
+                    break;
+                case FECHAR_PEDIDO:
+                    fecharPedido((Integer) a[0]);
+                    break;
+                case REMOVER_PRODUTO:
+                    removerProduto((Integer) a[0], (String) a[1]);
+                    break;
+                case LIBERAR_PEDIDO:
+                    liberarPedido((Integer) a[0]);
+                    break;
+                case CRIAR_ENTREGA:
+                    criarEntrega((Integer) a[0], (Integer) a[1], (String) a[2]);
+                    break;
+                case ENTREGAR:
+                    entregar((Integer) a[0]);
+                    break;
+            }
+        } catch (Exception e) {
+            throw new IOException("Falha ao reproduzir o registro " + registro.getSequencia() + " do journal", e);
+        }
+    }
+
+    // Anexa a operação ao journal; chamado depois das validações e antes de qualquer alteração no
+    // estado, para que uma falha de gravação não deixe a memória à frente do journal
+    private void registrar(JournalSave.Operacao operacao, Object... argumentos) {
+        if (journal == null) {
+            return; // Reproduzindo o journal na inicialização
+        }
+        try {
+            journal.registrar(operacao, argumentos);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        checkpoints.mutacao();
+    }
+
+    public synchronized void zerarSistema(){
+        registrar(JournalSave.Operacao.ZERAR_SISTEMA);
+
         this.usuarios.clear();
         this.usuariosPorEmail.clear();
+        this.entregadoresPorPlaca.clear();
         this.empresas.clear();
         this.empresasPorDono.clear();
+        this.empresasPorNome.clear();
+        this.empresaPorNomeEndereco.clear();
+        this.facetasEmpresas.limpar();
         this.produtos.clear();
         this.produtosPorRestaurante.clear();
+        this.produtoPorNome.clear();
+        this.buscaProdutos.limpar();
+        this.cardapioPrecos.limpar();
         this.pedidos.clear();
         this.pedidosPorRestaurante.clear();
-
+        this.pedidoAbertoPorClienteEmpresa.clear();
+        this.historicoPedidos.limpar();
+        this.empresasPorEntregador.clear();
+        this.entregas.clear();
+        this.entregaPorPedido.clear();
+        this.estadosPedidos.limpar();
+        this.arquivo.descartarTudo();
+        // Sem nenhuma entrega restante, o contador recomeça, como na próxima inicialização
+        Entrega.setContador(0);
+        geracao++;
+
+        alteracoes.marcarTudo();
     }
 
     ///Criando o usuario cliente
-    public void criarUsuario(String nome, String email, String senha, String endereco) throws NomeInvalidoException
+    public synchronized void criarUsuario(String nome, String email, String senha, String endereco) throws NomeInvalidoException
             , EmailInvalidoException, SenhaInvalidaException, EnderecoInvalidoException, EmailExistenteException {
 
         if (nome == null || nome.trim().isEmpty()) throw new NomeInvalidoException();
@@ -58,13 +286,16 @@ public class Sistema {
 
         if (usuariosPorEmail.containsKey(email)) throw new EmailExistenteException();
 
+        registrar(JournalSave.Operacao.CRIAR_CLIENTE, nome, email, senha, endereco);
+
         Cliente cliente = new Cliente(nome, email, senha, endereco);
         usuarios.put(cliente.getId(), cliente);
         usuariosPorEmail.put(email, cliente);
+        alteracoes.marcar(Alteracoes.Colecao.USUARIOS, cliente.getId());
     }
 
     ///Criando o usuario dono
-    public void criarUsuario(String nome, String email, String senha, String endereco, String cpf) throws NomeInvalidoException
+    public synchronized void criarUsuario(String nome, String email, String senha, String endereco, String cpf) throws NomeInvalidoException
             , EmailInvalidoException, SenhaInvalidaException, EnderecoInvalidoException, CpfInvalidoException, EmailExistenteException {
 
         if (nome == null || nome.trim().isEmpty()) throw new NomeInvalidoException();
@@ -75,14 +306,17 @@ public class Sistema {
 
         if (usuariosPorEmail.containsKey(email)) throw new EmailExistenteException();
 
+        registrar(JournalSave.Operacao.CRIAR_DONO, nome, email, senha, endereco, cpf);
+
         DonoRestaurante donoRestaurante = new DonoRestaurante(nome, email, senha, endereco, cpf);
 
         usuarios.put(donoRestaurante.getId(), donoRestaurante);
         usuariosPorEmail.put(email, donoRestaurante);
+        alteracoes.marcar(Alteracoes.Colecao.USUARIOS, donoRestaurante.getId());
     }
 
     ///Criando o usuario entregador
-    public void criarUsuario(String nome, String email, String senha, String endereco, String veiculo, String placa) throws NomeInvalidoException
+    public synchronized void criarUsuario(String nome, String email, String senha, String endereco, String veiculo, String placa) throws NomeInvalidoException
             , EmailInvalidoException, SenhaInvalidaException, EnderecoInvalidoException, EmailExistenteException, VeiculoInvalidoException, PlacaInvalidaException, AtributoInvalidoException {
 
         if (nome == null || nome.trim().isEmpty()) throw new NomeInvalidoException();
@@ -91,26 +325,27 @@ public class Sistema {
         if (endereco == null || endereco.trim().isEmpty())  throw new EnderecoInvalidoException();
 
         // Verifica se a placa já foi cadastrada
-        for (Usuario entregador : usuarios.values()) {
-            if(entregador.ehEntregador()) {
-                if (entregador.getAtributo("placa").equals(placa)) {
-                    throw new PlacaInvalidaException();
-                }
-            }
+        String chavePlaca = Entregador.normalizarPlaca(placa);
+        if (chavePlaca != null && !chavePlaca.isEmpty() && entregadoresPorPlaca.containsKey(chavePlaca)) {
+            throw new PlacaInvalidaException();
         }
 
-        // Validações de veículo e placa
+        // Validações de veículo e placa; uma placa sem letras nem dígitos não identifica o veículo
         if (veiculo == null || veiculo.trim().isEmpty()) throw new VeiculoInvalidoException();
-        if (placa == null || placa.trim().isEmpty()) throw new PlacaInvalidaException();
+        if (chavePlaca == null || chavePlaca.isEmpty()) throw new PlacaInvalidaException();
 
         if (usuariosPorEmail.containsKey(email)) throw new EmailExistenteException();
 
+        registrar(JournalSave.Operacao.CRIAR_ENTREGADOR, nome, email, senha, endereco, veiculo, placa);
+
         Entregador entregador = new Entregador(nome, email, senha, endereco, veiculo, placa);
         usuarios.put(entregador.getId(), entregador);
         usuariosPorEmail.put(email, entregador);
+        entregadoresPorPlaca.put(chavePlaca, entregador);
+        alteracoes.marcar(Alteracoes.Colecao.USUARIOS, entregador.getId());
     }
 
-    public void cadastrarEntregador(int idEmpresa, int idEntregador)
+    public synchronized void cadastrarEntregador(int idEmpresa, int idEntregador)
             throws EmpresaNaoEncontradaException, UsuarioNaoEntregadorException {
 
         // Verificar se a empresa existe
@@ -126,48 +361,40 @@ public class Sistema {
             throw new UsuarioNaoEntregadorException(); // O usuário não é um entregador
         }
 
-        // Verificar se o entregador já está cadastrado na empresa
-        List<Entregador> entregadoresDaEmpresa = empresa.getEntregadores();
-        if (entregadoresDaEmpresa.contains(usuario)) {
-            throw new UsuarioNaoEntregadorException(); // Não pode cadastrar o mesmo entregador duas vezes
+        // Não pode cadastrar o mesmo entregador duas vezes
+        if (empresa.temEntregador(idEntregador)) {
+            throw new UsuarioNaoEntregadorException();
         }
 
-        Entregador entregador = (Entregador) usuarios.get(idEntregador);
+        registrar(JournalSave.Operacao.CADASTRAR_ENTREGADOR, idEmpresa, idEntregador);
 
         // Cadastrar o entregador na empresa
-        entregadoresDaEmpresa.add(entregador);
-        empresa.setEntregadores(entregadoresDaEmpresa); // Atualizar a lista de entregadores da empresa
+        empresa.adicionarEntregador((Entregador) usuario);
 
-        // Associar a empresa ao entregador no Map empresasPorEntregador
-        List<Empresa> empresasDoEntregador = empresasPorEntregador.getOrDefault(idEntregador, new ArrayList<>());
-        empresasDoEntregador.add(empresa);
-        empresasPorEntregador.put(idEntregador, empresasDoEntregador);
+        // Associar a empresa ao entregador no Map empresasPorEntregador; a ordem fica gravada no entregador
+        empresasPorEntregador.computeIfAbsent(idEntregador, id -> new LinkedHashMap<>()).put(idEmpresa, empresa);
+        ((Entregador) usuario).adicionarEmpresa(idEmpresa);
+        alteracoes.marcar(Alteracoes.Colecao.EMPRESAS, idEmpresa);
+        alteracoes.marcar(Alteracoes.Colecao.USUARIOS, idEntregador);
     }
 
 
-    public String getEntregadores(int idEmpresa) throws EmpresaNaoEncontradaException {
+    public synchronized String getEntregadores(int idEmpresa) throws EmpresaNaoEncontradaException {
         // Verificar se a empresa existe
         Empresa empresa = empresas.get(idEmpresa);
         if (empresa == null) {
             throw new EmpresaNaoEncontradaException(); // Empresa não encontrada
         }
 
-        // Obter a lista de entregadores da empresa
-        List<Entregador> entregadoresDaEmpresa = empresa.getEntregadores();
-
-        // Criar um conjunto para armazenar os emails (evita duplicatas)
-        Set<String> emailsEntregadores = new HashSet<>();
-
-        // Preencher o conjunto com os emails dos entregadores
-        for (Entregador entregador : entregadoresDaEmpresa) {
+        // Retornar os emails, na ordem de cadastro, no formato "{[email1, email2]}"
+        StringJoiner emailsEntregadores = new StringJoiner(", ", "{[", "]}");
+        for (Entregador entregador : empresa.getEntregadores()) {
             emailsEntregadores.add(entregador.getEmail());
         }
-
-        // Retornar o conjunto como uma string no formato "{[email1, email2]}"
-        return "{" + emailsEntregadores.toString() + "}";
+        return emailsEntregadores.toString();
     }
 
-    public String getEmpresas(int idEntregador) throws UsuarioNaoEntregadorException {
+    public synchronized String getEmpresas(int idEntregador) throws UsuarioNaoEntregadorException {
         // Verificar se o entregador existe
         Usuario entregador = usuarios.get(idEntregador); // Supõe-se que entregadores também são usuários
 
@@ -176,44 +403,46 @@ public class Sistema {
         }
 
         // Obter as empresas associadas ao entregador no Map
-        List<Empresa> empresasDoEntregador = empresasPorEntregador.get(idEntregador);
+        Map<Integer, Empresa> empresasDoEntregador = empresasPorEntregador.get(idEntregador);
 
         // Se o entregador não tiver empresas associadas, retornar uma lista vazia
         if (empresasDoEntregador == null || empresasDoEntregador.isEmpty()) {
             return "{}";
         }
 
-        // Criar uma lista para armazenar os detalhes das empresas
-        List<String> empresasDetalhes = new ArrayList<>();
-
-        for (Empresa empresa : empresasDoEntregador) {
-            String detalhes = "[" + empresa.getNome() + ", " + empresa.getEndereco() + "]";
-            empresasDetalhes.add(detalhes);
+        StringJoiner empresasDetalhes = new StringJoiner(", ", "{[", "]}");
+        for (Empresa empresa : empresasDoEntregador.values()) {
+            empresasDetalhes.add("[" + empresa.getNome() + ", " + empresa.getEndereco() + "]");
         }
-
-        return "{" + empresasDetalhes.toString() + "}";
+        return empresasDetalhes.toString();
     }
 
 
 
 
-    public int login(String email, String senha) throws LoginSenhaInvalidosException {
-        for (Usuario usuario : usuarios.values()) {
-            if (usuario.getEmail().equals(email) && usuario.getSenha().equals(senha)) {
-                return usuario.getId();
-            }
+    public synchronized int login(String email, String senha) throws LoginSenhaInvalidosException {
+        Usuario usuario = email == null ? null : usuariosPorEmail.get(email);
+
+        // A senha é comparada em tempo constante, e mesmo sem usuário, para que o tempo de
+        // resposta não revele se o email existe nem quantos caracteres da senha conferem
+        String esperada = usuario == null ? SENHA_INEXISTENTE : usuario.getSenha();
+        boolean confere = senha != null && MessageDigest.isEqual(esperada.getBytes(StandardCharsets.UTF_8),
+                senha.getBytes(StandardCharsets.UTF_8));
+
+        if (usuario == null || !confere) {
+            throw new LoginSenhaInvalidosException();
         }
-        throw new LoginSenhaInvalidosException();
+        return usuario.getId();
     }
 
-    public String getAtributoUsuario(int id, String atributo) throws UsuarioNaoCadastradoException, AtributoInvalidoException{
+    public synchronized String getAtributoUsuario(int id, String atributo) throws UsuarioNaoCadastradoException, AtributoInvalidoException{
         Usuario usuario = usuarios.get(id);
         if (usuario == null) throw new UsuarioNaoCadastradoException();
         return usuario.getAtributo(atributo);
     }
 
     ///Criar Restaurante
-    public int criarEmpresa(String tipoEmpresa, int idDono, String nome, String endereco, String tipoCozinha) throws NomeEmpresaExistenteException, EnderecoDuplicadoException, UsuarioNaoAutorizadoException{
+    public synchronized int criarEmpresa(String tipoEmpresa, int idDono, String nome, String endereco, String tipoCozinha) throws NomeEmpresaExistenteException, EnderecoDuplicadoException, UsuarioNaoAutorizadoException{
 
         // Verificar se o usuário com o ID fornecido é um DonoRestaurante
         Usuario usuario = usuarios.get(idDono);
@@ -221,40 +450,36 @@ public class Sistema {
             throw new UsuarioNaoAutorizadoException();
         }
 
-        // Verificar se o dono já possui uma empresa com o mesmo nome e endereço
-        List<Empresa> empresasDoDono = empresasPorDono.get(idDono);
-        if (empresasDoDono != null) {
-            for (Empresa empresa : empresasDoDono) {
-                if (empresa.getNome().equals(nome) && empresa.getEndereco().equals(endereco)) {
-                    throw new EnderecoDuplicadoException();
-                }
+        // Verificar se já existe uma empresa com o mesmo nome e endereço: do mesmo dono ou de outro
+        Empresa mesmoLocal = empresaPorNomeEndereco.get(Snapshot.chaveNomeEndereco(nome, endereco));
+        if (mesmoLocal != null) {
+            if (mesmoLocal.getIdDono() == idDono) {
+                throw new EnderecoDuplicadoException();
             }
+            throw new NomeEmpresaExistenteException();
         }
 
-        // Verificar se existe uma empresa com o mesmo nome para qualquer dono
-        for (Empresa empresa : empresas.values()) {
-            if (empresa.getNome().equals(nome) && empresa.getEndereco().equals(endereco)) {
-                throw new NomeEmpresaExistenteException();
-            }
-        }
+        registrar(JournalSave.Operacao.CRIAR_RESTAURANTE, tipoEmpresa, idDono, nome, endereco, tipoCozinha);
 
-        Restaurante empresa = new Restaurante(tipoEmpresa, nome, endereco, tipoCozinha);
+        Restaurante empresa = new Restaurante(idDono, tipoEmpresa, nome, endereco, tipoCozinha);
         empresas.put(empresa.getId(), empresa);
 
         // Adicionar o restaurante à lista do dono
-        empresasDoDono = empresasPorDono.get(idDono);
+        List<Empresa> empresasDoDono = empresasPorDono.get(idDono);
         if (empresasDoDono == null) {
             empresasDoDono = new ArrayList<>();
             empresasPorDono.put(idDono, empresasDoDono);
         }
 
         empresasDoDono.add(empresa);
-
+        indexarNome(empresa);
+        facetasEmpresas.adicionar(empresa);
+        alteracoes.marcar(Alteracoes.Colecao.EMPRESAS, empresa.getId());
         return empresa.getId();
     }
 
     // Criar Mercado
-    public int criarEmpresa(String tipoEmpresa, int idDono, String nome, String endereco, String abre, String fecha, String tipoMercado)
+    public synchronized int criarEmpresa(String tipoEmpresa, int idDono, String nome, String endereco, String abre, String fecha, String tipoMercado)
             throws TipoEmpresaInvalidoException, NomeInvalidoException, EnderecoInvalidoException, NomeEmpresaExistenteException, EnderecoDuplicadoException,
             UsuarioNaoAutorizadoException, FormatoHoraInvalidoException,
             TipoMercadoInvalidoException, EnderecoEmpresaInvalidoException, HorarioInvalidoException {
@@ -310,46 +535,56 @@ public class Sistema {
         }
 
         // Verificar se o dono já possui uma empresa com o mesmo nome e endereço
-        List<Empresa> empresasDoDono = empresasPorDono.get(idDono);
-        if (empresasDoDono != null) {
-            for (Empresa empresa : empresasDoDono) {
-                if (empresa.getNome().equals(nome) && empresa.getEndereco().equals(endereco)) {
-                    throw new EnderecoDuplicadoException(); // Mesmo dono não pode ter empresa com mesmo nome e endereço
-                }
-            }
+        Empresa mesmoLocal = empresaPorNomeEndereco.get(Snapshot.chaveNomeEndereco(nome, endereco));
+        if (mesmoLocal != null && mesmoLocal.getIdDono() == idDono) {
+            throw new EnderecoDuplicadoException(); // Mesmo dono não pode ter empresa com mesmo nome e endereço
         }
 
         // Verificar se outra pessoa já possui uma empresa com o mesmo nome
-        for (Map.Entry<Integer, List<Empresa>> entry : empresasPorDono.entrySet()) {
-            int donoId = entry.getKey();
-            if (donoId != idDono) { // Verifica apenas os donos diferentes
-                List<Empresa> empresasOutroDono = entry.getValue();
-                for (Empresa empresa : empresasOutroDono) {
-                    if (empresa.getNome().equals(nome)) {
-                        throw new NomeEmpresaExistenteException(); // Donos diferentes não podem ter empresas com o mesmo nome
-                    }
-                }
-            }
+        if (outroDonoTemNome(nome, idDono)) {
+            throw new NomeEmpresaExistenteException(); // Donos diferentes não podem ter empresas com o mesmo nome
         }
 
+        registrar(JournalSave.Operacao.CRIAR_MERCADO, tipoEmpresa, idDono, nome, endereco, abre, fecha, tipoMercado);
+
         // Criar a nova empresa
-        Mercado empresa = new Mercado(tipoEmpresa, nome, endereco, abre, fecha, tipoMercado);
+        Mercado empresa = new Mercado(idDono, tipoEmpresa, nome, endereco, abre, fecha, tipoMercado);
         empresas.put(empresa.getId(), empresa);
 
         // Adicionar a empresa à lista do dono
-        empresasDoDono = empresasPorDono.get(idDono);
+        List<Empresa> empresasDoDono = empresasPorDono.get(idDono);
         if (empresasDoDono == null) {
             empresasDoDono = new ArrayList<>();
             empresasPorDono.put(idDono, empresasDoDono);
         }
 
         empresasDoDono.add(empresa);
-
+        indexarNome(empresa);
+        facetasEmpresas.adicionar(empresa);
+        alteracoes.marcar(Alteracoes.Colecao.EMPRESAS, empresa.getId());
         return empresa.getId();
     }
 
 
 
+    // Verifica, pelo índice de nomes, se um dono diferente do informado já tem uma empresa com esse nome
+    private boolean outroDonoTemNome(String nome, int idDono) {
+        List<Empresa> mesmoNome = empresasPorNome.get(nome);
+        if (mesmoNome != null) {
+            for (Empresa empresa : mesmoNome) {
+                if (empresa.getIdDono() != idDono) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void indexarNome(Empresa empresa) {
+        empresasPorNome.computeIfAbsent(empresa.getNome(), n -> new ArrayList<>()).add(empresa);
+        empresaPorNomeEndereco.putIfAbsent(Snapshot.chaveNomeEndereco(empresa.getNome(), empresa.getEndereco()), empresa);
+    }
+
     // Método auxiliar para verificar o formato da hora
     private boolean horaFormatoValido(String hora) {
         return hora.matches("\\d{2}:\\d{2}");
@@ -389,7 +624,7 @@ public class Sistema {
         return true;
     }
 
-    public void alterarFuncionamento(int mercadoId, String abre, String fecha) throws AtributoInvalidoException,
+    public synchronized void alterarFuncionamento(int mercadoId, String abre, String fecha) throws AtributoInvalidoException,
             FormatoHoraInvalidoException, HorarioInvalidoException, MercadoInvalidoException {
         // Verificar se o mercado existe no sistema
         if (!empresas.containsKey(mercadoId)) {
@@ -425,12 +660,15 @@ public class Sistema {
             throw new MercadoInvalidoException();
         }
 
+        registrar(JournalSave.Operacao.ALTERAR_FUNCIONAMENTO, mercadoId, abre, fecha);
+
         mercado.setAtributo("abre", abre);
         mercado.setAtributo("fecha", fecha);
+        alteracoes.marcar(Alteracoes.Colecao.EMPRESAS, mercadoId);
     }
 
     // Criar Farmacia
-    public int criarEmpresa(String tipoEmpresa, int idDono, String nome, String endereco, boolean aberto24Horas,
+    public synchronized int criarEmpresa(String tipoEmpresa, int idDono, String nome, String endereco, boolean aberto24Horas,
                             int numeroFuncionarios)
             throws TipoEmpresaInvalidoException, NomeInvalidoException, EnderecoInvalidoException, NomeEmpresaExistenteException, EnderecoDuplicadoException,
             UsuarioNaoAutorizadoException, EnderecoEmpresaInvalidoException {
@@ -457,48 +695,101 @@ public class Sistema {
         }
 
         // Verificar se o dono já possui uma empresa com o mesmo nome e endereço
-        List<Empresa> empresasDoDono = empresasPorDono.get(idDono);
-        if (empresasDoDono != null) {
-            for (Empresa empresa : empresasDoDono) {
-                if (empresa.getNome().equals(nome) && empresa.getEndereco().equals(endereco)) {
-                    throw new EnderecoDuplicadoException(); // Mesmo dono não pode ter farmácia com mesmo nome e endereço
-                }
-            }
+        Empresa mesmoLocal = empresaPorNomeEndereco.get(Snapshot.chaveNomeEndereco(nome, endereco));
+        if (mesmoLocal != null && mesmoLocal.getIdDono() == idDono) {
+            throw new EnderecoDuplicadoException(); // Mesmo dono não pode ter farmácia com mesmo nome e endereço
         }
 
         // Verificar se outra pessoa já possui uma empresa com o mesmo nome
-        for (Map.Entry<Integer, List<Empresa>> entry : empresasPorDono.entrySet()) {
-            int donoId = entry.getKey();
-            if (donoId != idDono) { // Verifica apenas os donos diferentes
-                List<Empresa> empresasOutroDono = entry.getValue();
-                for (Empresa empresa : empresasOutroDono) {
-                    if (empresa.getNome().equals(nome)) {
-                        throw new NomeEmpresaExistenteException(); // Donos diferentes não podem ter empresas com o mesmo nome
-                    }
-                }
-            }
+        if (outroDonoTemNome(nome, idDono)) {
+            throw new NomeEmpresaExistenteException(); // Donos diferentes não podem ter empresas com o mesmo nome
         }
 
+        registrar(JournalSave.Operacao.CRIAR_FARMACIA, tipoEmpresa, idDono, nome, endereco, aberto24Horas, numeroFuncionarios);
+
         // Criar a nova farmácia
-        Farmacia empresa = new Farmacia(tipoEmpresa, nome, endereco, aberto24Horas, numeroFuncionarios);
+        Farmacia empresa = new Farmacia(idDono, tipoEmpresa, nome, endereco, aberto24Horas, numeroFuncionarios);
         empresas.put(empresa.getId(), empresa);
 
         // Adicionar a empresa à lista do dono
-        empresasDoDono = empresasPorDono.get(idDono);
+        List<Empresa> empresasDoDono = empresasPorDono.get(idDono);
         if (empresasDoDono == null) {
             empresasDoDono = new ArrayList<>();
             empresasPorDono.put(idDono, empresasDoDono);
         }
 
         empresasDoDono.add(empresa);
-
+        indexarNome(empresa);
+        facetasEmpresas.adicionar(empresa);
+        alteracoes.marcar(Alteracoes.Colecao.EMPRESAS, empresa.getId());
         return empresa.getId();
     }
 
 
 
 
-    public String getEmpresasDoUsuario(int idDono) throws UsuarioNaoAutorizadoException{
+    /**
+     * Empresas de qualquer dono que têm todos os valores de faceta pedidos.
+     *
+     * @param filtros Pares "faceta=valor" separados por vírgula, por exemplo
+     *                "tipoEmpresa=restaurante, tipoCozinha=japonesa"; vazio seleciona todas.
+     *                Uma faceta repetida com outro valor gera AtributoInvalidoException.
+     * @return As empresas em ordem de criação, no formato "{[[nome, endereco], ...]}".
+     */
+    public synchronized String buscarEmpresas(String filtros) throws AtributoInvalidoException {
+        BitSet selecionadas = facetasEmpresas.filtrar(lerFiltros(filtros));
+        StringJoiner resultado = new StringJoiner(", ", "{[", "]}");
+        for (int id = selecionadas.nextSetBit(0); id >= 0; id = selecionadas.nextSetBit(id + 1)) {
+            Empresa empresa = empresas.get(id);
+            resultado.add("[" + empresa.getNome() + ", " + empresa.getEndereco() + "]");
+        }
+        return resultado.toString();
+    }
+
+    /**
+     * Quantas das empresas selecionadas pelos filtros têm cada valor de uma faceta.
+     *
+     * @param filtros Mesmo formato de {@link #buscarEmpresas(String)}.
+     * @param faceta  tipoEmpresa, tipoCozinha, tipoMercado ou aberto24Horas.
+     * @return Os valores presentes em ordem alfabética, no formato "{[[valor, quantidade], ...]}".
+     */
+    public synchronized String contarEmpresas(String filtros, String faceta) throws AtributoInvalidoException {
+        if (!FacetasEmpresas.ehFaceta(faceta)) {
+            throw new AtributoInvalidoException();
+        }
+        BitSet selecionadas = facetasEmpresas.filtrar(lerFiltros(filtros));
+        StringJoiner resultado = new StringJoiner(", ", "{[", "]}");
+        for (Map.Entry<String, Integer> valor : facetasEmpresas.contar(selecionadas, faceta).entrySet()) {
+            resultado.add("[" + valor.getKey() + ", " + valor.getValue() + "]");
+        }
+        return resultado.toString();
+    }
+
+    // Lê os pares "faceta=valor" de buscarEmpresas e contarEmpresas
+    private static Map<String, String> lerFiltros(String filtros) throws AtributoInvalidoException {
+        Map<String, String> lidos = new LinkedHashMap<>();
+        if (filtros == null || filtros.trim().isEmpty()) {
+            return lidos;
+        }
+        for (String par : filtros.split(",", -1)) {
+            int igual = par.indexOf('=');
+            if (igual < 0) {
+                throw new AtributoInvalidoException();
+            }
+            String faceta = par.substring(0, igual).trim();
+            String valor = par.substring(igual + 1).trim();
+            if (!FacetasEmpresas.ehFaceta(faceta) || valor.isEmpty()) {
+                throw new AtributoInvalidoException();
+            }
+            String anterior = lidos.putIfAbsent(faceta, valor);
+            if (anterior != null && !anterior.equals(valor)) {
+                throw new AtributoInvalidoException(); // Cada empresa tem um só valor por faceta
+            }
+        }
+        return lidos;
+    }
+
+    public synchronized String getEmpresasDoUsuario(int idDono) throws UsuarioNaoAutorizadoException{
 
         // Verificar se o usuário com o ID fornecido é um DonoRestaurante
         Usuario usuario = usuarios.get(idDono);
@@ -529,7 +820,7 @@ public class Sistema {
         return resultado.toString();
     }
 
-    public int getIdEmpresa(int idDono, String nome, int indice) throws NomeInvalidoException,
+    public synchronized int getIdEmpresa(int idDono, String nome, int indice) throws NomeInvalidoException,
             NomeEmpresaNaoExisteException, IndiceInvalidoException, IndiceMaiorException {
         // Verifica se o nome é válido
         if (nome == null || nome.trim().isEmpty()) {
@@ -551,8 +842,9 @@ public class Sistema {
 
         List<Integer> idsCorrespondentes = new ArrayList<>();
 
-        for (Empresa empresa : empresas) {
-            if (empresa.getNome().equals(nome)) {
+        // Empresas com esse nome, de qualquer dono, já em ordem de criação
+        for (Empresa empresa : empresasPorNome.getOrDefault(nome, Collections.emptyList())) {
+            if (empresa.getIdDono() == idDono) {
                 idsCorrespondentes.add(empresa.getId());
             }
         }
@@ -568,7 +860,7 @@ public class Sistema {
         return idsCorrespondentes.get(indice);
     }
 
-    public String getAtributoEmpresa(int empresaId, String atributo) throws EmpresaNaoCadastradaException, AtributoInvalidoException{
+    public synchronized String getAtributoEmpresa(int empresaId, String atributo) throws EmpresaNaoCadastradaException, AtributoInvalidoException{
         if(atributo == null){
             throw new AtributoInvalidoException();
         }
@@ -579,37 +871,32 @@ public class Sistema {
         }
 
         if (atributo.equals("dono")) {
-            for (Map.Entry<Integer, List<Empresa>> entry : empresasPorDono.entrySet()) {
-                List<Empresa> restaurantesDoDono = entry.getValue();
-                for (Empresa r : restaurantesDoDono) {
-                    if (r.getId() == empresaId) {
-                        return usuarios.get(entry.getKey()).getNome();
-                    }
-                }
+            Usuario dono = usuarios.get(empresa.getIdDono());
+            if (dono != null) {
+                return dono.getNome();
             }
         }
 
         return empresa.getAtributo(atributo);
     }
 
-    public int criarProduto(int empresa, String nome, float valor, String categoria) throws NomeProdutoExisteException, NomeInvalidoException, ValorInvalidoException, CategoriaInvalidaException{
+    public synchronized int criarProduto(int empresa, String nome, float valor, String categoria) throws NomeProdutoExisteException, NomeInvalidoException, ValorInvalidoException, CategoriaInvalidaException{
 
         if (nome == null || nome.trim().isEmpty()) throw new NomeInvalidoException();
         if (categoria == null || categoria.trim().isEmpty()) throw new CategoriaInvalidaException();
         if (valor <= 0) throw new ValorInvalidoException();
 
-        List<Produto> produtosDoRestaurante = produtosPorRestaurante.get(empresa);
-        if (produtosDoRestaurante != null) {
-            for (Produto produto : produtosDoRestaurante) {
-                if (produto.getNome().equals(nome)) {
-                    throw new NomeProdutoExisteException();
-                }
-            }
+        Map<String, Produto> catalogo = produtoPorNome.computeIfAbsent(empresa, id -> new HashMap<>());
+        if (catalogo.containsKey(nome)) {
+            throw new NomeProdutoExisteException();
         }
 
-        Produto produto = new Produto(nome, valor, categoria);
+        registrar(JournalSave.Operacao.CRIAR_PRODUTO, empresa, nome, valor, categoria);
+
+        Produto produto = new Produto(empresa, nome, valor, categoria);
+        catalogo.put(nome, produto);
 
-        produtosDoRestaurante = produtosPorRestaurante.get(empresa);
+        List<Produto> produtosDoRestaurante = produtosPorRestaurante.get(empresa);
         if (produtosDoRestaurante == null) {
             produtosDoRestaurante = new ArrayList<>();
             produtosPorRestaurante.put(empresa, produtosDoRestaurante);
@@ -617,11 +904,13 @@ public class Sistema {
 
         produtosDoRestaurante.add(produto);
         produtos.put(produto.getId(), produto);
-
+        buscaProdutos.adicionar(produto);
+        cardapioPrecos.adicionar(produto);
+        alteracoes.marcar(Alteracoes.Colecao.PRODUTOS, produto.getId());
         return produto.getId();
     }
 
-    public void editarProduto(int produto, String nome, float valor, String categoria) throws NomeInvalidoException,
+    public synchronized void editarProduto(int produto, String nome, float valor, String categoria) throws NomeInvalidoException,
             CategoriaInvalidaException, ValorInvalidoException, ProdutoNaoCadastradoException {
 
         Produto produto1 = produtos.get(produto);
@@ -634,43 +923,130 @@ public class Sistema {
             throw new ProdutoNaoCadastradoException();
         }
 
+        registrar(JournalSave.Operacao.EDITAR_PRODUTO, produto, nome, valor, categoria);
+
+        String nomeAnterior = produto1.getNome();
         produto1.setNome(nome);
+        if (!nome.equals(nomeAnterior)) {
+            renomearNoCatalogo(produto1, nomeAnterior);
+        }
         produto1.setValor(valor);
         produto1.setCategoria(categoria);
+        buscaProdutos.atualizar(produto1);
+        cardapioPrecos.atualizar(produto1);
+        alteracoes.marcar(Alteracoes.Colecao.PRODUTOS, produto);
+    }
 
+    /**
+     * Atualiza produtoPorNome depois que um produto trocou de nome. Se o nome antigo continuar
+     * em uso por outro produto da empresa (nomes repetidos só surgem por edição), ele passa a
+     * apontar para o de menor ID entre esses, como faria a busca pela lista.
+     */
+    private void renomearNoCatalogo(Produto produto, String nomeAnterior) {
+        Map<String, Produto> catalogo = produtoPorNome.computeIfAbsent(produto.getIdEmpresa(), id -> new HashMap<>());
+        if (catalogo.remove(nomeAnterior, produto)) {
+            for (Produto outro : produtosPorRestaurante.getOrDefault(produto.getIdEmpresa(), Collections.emptyList())) {
+                if (outro.getNome().equals(nomeAnterior)) {
+                    catalogo.put(nomeAnterior, outro);
+                    break;
+                }
+            }
+        }
+        Produto atual = catalogo.get(produto.getNome());
+        if (atual == null || atual.getId() > produto.getId()) {
+            catalogo.put(produto.getNome(), produto);
+        }
     }
 
-    public String getProduto(String nome, int empresa, String atributo) throws AtributoNaoExisteException, ProdutoNaoEncontradoException {
+    public synchronized String getProduto(String nome, int empresa, String atributo) throws AtributoNaoExisteException, ProdutoNaoEncontradoException {
         if (atributo == null) {
             throw new AtributoNaoExisteException();
         }
 
-        List<Produto> produtosDoRestaurante = produtosPorRestaurante.get(empresa);
-        if (produtosDoRestaurante == null) {
+        Map<String, Produto> catalogo = produtoPorNome.get(empresa);
+        Produto produto = catalogo == null ? null : catalogo.get(nome);
+        if (produto == null) {
             throw new ProdutoNaoEncontradoException();
         }
 
-        for (Produto produto : produtosDoRestaurante) {
-            if (produto.getNome().equals(nome)) {
-                if (atributo.equals("valor")) {
-                    return String.format(Locale.US, "%.2f", produto.getValor());
-                } else if (atributo.equals("empresa")) {
-                    Empresa restaurante = empresas.get(empresa);
-                    if (restaurante != null) {
-                        return restaurante.getNome();
-                    } else {
-                        throw new ProdutoNaoEncontradoException();
-                    }
-                } else {
-                    return produto.getAtributo(atributo);
-                }
+        if (atributo.equals("valor")) {
+            return String.format(Locale.US, "%.2f", produto.getValor());
+        } else if (atributo.equals("empresa")) {
+            Empresa restaurante = empresas.get(empresa);
+            if (restaurante != null) {
+                return restaurante.getNome();
+            } else {
+                throw new ProdutoNaoEncontradoException();
             }
+        } else {
+            return produto.getAtributo(atributo);
         }
+    }
 
-        throw new ProdutoNaoEncontradoException();
+    /**
+     * Busca produtos de todas as empresas pelas palavras do nome e da categoria; cada termo
+     * vale como prefixo e todos precisam aparecer no produto.
+     *
+     * @param termos     Termos da busca, separados por espaço.
+     * @param quantidade Número máximo de resultados.
+     * @return Os produtos mais relevantes e, entre eles, os mais baratos, no formato
+     * "{[[nome, empresa, valor], ...]}".
+     */
+    public synchronized String buscarProdutos(String termos, int quantidade) throws IndiceInvalidoException {
+        if (quantidade < 0) {
+            throw new IndiceInvalidoException();
+        }
+        StringJoiner resultado = new StringJoiner(", ", "{[", "]}");
+        for (Produto produto : buscaProdutos.buscar(termos, quantidade)) {
+            Empresa empresa = empresas.get(produto.getIdEmpresa());
+            resultado.add("[" + produto.getNome() + ", " + (empresa == null ? null : empresa.getNome()) + ", "
+                    + String.format(Locale.US, "%.2f", produto.getValor()) + "]");
+        }
+        return resultado.toString();
     }
 
-    public String listarProdutos(int empresa)throws EmpresaNaoEncontradaException{
+    /**
+     * Produtos da empresa em uma categoria com valor até o máximo informado.
+     *
+     * @return Os produtos do mais barato ao mais caro, no formato "{[[nome, valor], ...]}".
+     */
+    public synchronized String listarProdutosCategoria(int empresa, String categoria, float valorMaximo)
+            throws EmpresaNaoEncontradaException, CategoriaInvalidaException, ValorInvalidoException {
+        if (!empresas.containsKey(empresa)) {
+            throw new EmpresaNaoEncontradaException();
+        }
+        if (categoria == null || categoria.trim().isEmpty()) throw new CategoriaInvalidaException();
+        if (valorMaximo < 0) throw new ValorInvalidoException();
+
+        return listarComValor(cardapioPrecos.ateValor(empresa, categoria, valorMaximo));
+    }
+
+    /**
+     * Os produtos mais baratos da empresa, em todo o cardápio.
+     *
+     * @return Até {@code quantidade} produtos em ordem de valor, no formato "{[[nome, valor], ...]}".
+     */
+    public synchronized String listarProdutosMaisBaratos(int empresa, int quantidade)
+            throws EmpresaNaoEncontradaException, IndiceInvalidoException {
+        if (!empresas.containsKey(empresa)) {
+            throw new EmpresaNaoEncontradaException();
+        }
+        if (quantidade < 0) {
+            throw new IndiceInvalidoException();
+        }
+
+        return listarComValor(cardapioPrecos.maisBaratos(empresa, quantidade));
+    }
+
+    private static String listarComValor(List<Produto> produtosListados) {
+        StringJoiner resultado = new StringJoiner(", ", "{[", "]}");
+        for (Produto produto : produtosListados) {
+            resultado.add("[" + produto.getNome() + ", " + String.format(Locale.US, "%.2f", produto.getValor()) + "]");
+        }
+        return resultado.toString();
+    }
+
+    public synchronized String listarProdutos(int empresa)throws EmpresaNaoEncontradaException{
 
         Empresa restaurante = empresas.get(empresa);
         if (restaurante == null) {
@@ -695,7 +1071,7 @@ public class Sistema {
         return resultado.toString();
     }
 
-    public int criarPedido(int clienteId, int empresaId) throws DonoNaoPodePedidoException, PedidoEmAbertoException {
+    public synchronized int criarPedido(int clienteId, int empresaId) throws DonoNaoPodePedidoException, PedidoEmAbertoException {
         Usuario cliente = usuarios.get(clienteId);
         Empresa empresa = empresas.get(empresaId);
 
@@ -703,40 +1079,35 @@ public class Sistema {
             throw new DonoNaoPodePedidoException();
         }
 
-        Usuario donoRestaurante = null;
-        for (Map.Entry<Integer, List<Empresa>> entry : empresasPorDono.entrySet()) {
-            if (entry.getValue().contains(empresa)) {
-                donoRestaurante = usuarios.get(entry.getKey());
-                break;
-            }
-        }
-
-        if (donoRestaurante != null && donoRestaurante.equals(cliente)) {
+        // O dono não pode fazer pedidos na própria empresa
+        if (empresa.getIdDono() == clienteId) {
             throw new DonoNaoPodePedidoException();
         }
 
-        List<Pedido> pedidosDoRestaurante = pedidosPorRestaurante.get(empresaId);
-        if (pedidosDoRestaurante != null) {
-            for (Pedido pedido : pedidosDoRestaurante) {
-                if (pedido.getCliente().equals(cliente.getNome()) && pedido.getEstado().equals("aberto")) {
-                    throw new PedidoEmAbertoException();
-                }
-            }
+        // Só um pedido em aberto por cliente em cada empresa
+        long chave = Snapshot.chaveClienteEmpresa(clienteId, empresaId);
+        if (pedidoAbertoPorClienteEmpresa.containsKey(chave)) {
+            throw new PedidoEmAbertoException();
         }
 
-        Pedido pedido = new Pedido(cliente.getNome(), empresa.getNome());
-        pedidosDoRestaurante = pedidosPorRestaurante.get(empresaId);
+        registrar(JournalSave.Operacao.CRIAR_PEDIDO, clienteId, empresaId);
+
+        Pedido pedido = new Pedido(clienteId, empresaId);
+        pedidoAbertoPorClienteEmpresa.put(chave, pedido);
+        historicoPedidos.registrar(clienteId, empresaId, pedido.getNumero());
+        estadosPedidos.adicionar(empresaId, pedido.getNumero(), pedido.getEstado());
+        List<Pedido> pedidosDoRestaurante = pedidosPorRestaurante.get(empresaId);
         if (pedidosDoRestaurante == null) {
             pedidosDoRestaurante = new ArrayList<>();
             pedidosPorRestaurante.put(empresaId, pedidosDoRestaurante);
         }
         pedidosDoRestaurante.add(pedido);
         pedidos.put(pedido.getNumero(), pedido);
-
+        alteracoes.marcar(Alteracoes.Colecao.PEDIDOS, pedido.getNumero());
         return pedido.getNumero();
     }
 
-    public void adicionarProduto(int numeroPedido, int idProduto) throws ProdutoNaoEncontradoException,
+    public synchronized void adicionarProduto(int numeroPedido, int idProduto) throws ProdutoNaoEncontradoException,
             EmpresaNaoEncontradaException, ProdutoNaoPertenceEmpresaException, NaoExistePedidoAbertoException, PedidoFechadoException {
         Pedido pedido = pedidos.get(numeroPedido);
         if (pedido == null) {
@@ -751,32 +1122,25 @@ public class Sistema {
             throw new ProdutoNaoEncontradoException();
         }
 
-        String nomeEmpresaPedido = pedido.getEmpresa();
-        Empresa empresa = null;
-
-        for (Empresa r : empresas.values()) {
-            if (r.getNome().equals(nomeEmpresaPedido)) {
-                empresa = r;
-                break;
-            }
-        }
-
+        Empresa empresa = empresas.get(pedido.getIdEmpresa());
         if (empresa == null) {
             throw new EmpresaNaoEncontradaException();
         }
 
-        List<Produto> produtosDoRestaurante = produtosPorRestaurante.get(empresa.getId());
-        if (produtosDoRestaurante == null || !produtosDoRestaurante.contains(produto)) {
+        if (produto.getIdEmpresa() != empresa.getId()) {
             throw new ProdutoNaoPertenceEmpresaException();
         }
 
+        registrar(JournalSave.Operacao.ADICIONAR_PRODUTO, numeroPedido, idProduto);
+
         pedido.adicionarProduto(produto);
+        alteracoes.marcar(Alteracoes.Colecao.PEDIDOS, numeroPedido);
     }
 
 
-    public String getPedidos(int numeroPedido, String atributo) throws NaoExistePedidoAbertoException,
+    public synchronized String getPedidos(int numeroPedido, String atributo) throws NaoExistePedidoAbertoException,
             AtributoInvalidoException, AtributoNaoExisteException {
-        Pedido pedido = pedidos.get(numeroPedido);
+        Pedido pedido = buscarPedidoOuArquivado(numeroPedido);
 
         if (pedido == null) {
             throw new NaoExistePedidoAbertoException();
@@ -788,9 +1152,9 @@ public class Sistema {
 
         switch (atributo.toLowerCase()) {
             case "cliente":
-                return pedido.getCliente();
+                return pedido.getCliente(consulta);
             case "empresa":
-                return pedido.getEmpresa();
+                return pedido.getEmpresa(consulta);
             case "estado":
                 return pedido.getEstado();
             case "valor":
@@ -815,17 +1179,36 @@ public class Sistema {
         }
     }
 
-    public void fecharPedido(int numeroPedido) throws PedidoNaoEncontradoException {
+    // Pedido em memória ou, se já foi arquivado, lido do segmento correspondente; null se não existir
+    private Pedido buscarPedidoOuArquivado(int numero) {
+        Pedido pedido = pedidos.get(numero);
+        if (pedido != null) {
+            return pedido;
+        }
+        try {
+            return arquivo.buscarPedido(numero, produtos);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public synchronized void fecharPedido(int numeroPedido) throws PedidoNaoEncontradoException {
         Pedido pedido = pedidos.get(numeroPedido);
 
         if (pedido == null) {
             throw new PedidoNaoEncontradoException();
         }
 
+        registrar(JournalSave.Operacao.FECHAR_PEDIDO, numeroPedido);
+
+        String estadoAnterior = pedido.getEstado();
         pedido.finalizarPedido();
+        estadosPedidos.mover(pedido.getIdEmpresa(), numeroPedido, estadoAnterior, pedido.getEstado());
+        pedidoAbertoPorClienteEmpresa.remove(Snapshot.chaveClienteEmpresa(pedido.getIdCliente(), pedido.getIdEmpresa()), pedido);
+        alteracoes.marcar(Alteracoes.Colecao.PEDIDOS, numeroPedido);
     }
 
-    public void removerProduto(int numeroPedido, String nomeProduto) throws PedidoNaoEncontradoException,
+    public synchronized void removerProduto(int numeroPedido, String nomeProduto) throws PedidoNaoEncontradoException,
             ProdutoNaoEncontradoException, RemoverProdutoPedidoFechadoException, ProdutoInvalidoException {
 
         if (nomeProduto == null || nomeProduto.trim().isEmpty()) {
@@ -841,30 +1224,112 @@ public class Sistema {
             throw new RemoverProdutoPedidoFechadoException();
         }
 
-        boolean produtoRemovido = pedido.removerProdutoPorNome(nomeProduto);
-
-        if (!produtoRemovido) {
+        if (!pedido.contemProduto(nomeProduto)) {
             throw new ProdutoNaoEncontradoException();
         }
+
+        registrar(JournalSave.Operacao.REMOVER_PRODUTO, numeroPedido, nomeProduto);
+
+        pedido.removerProdutoPorNome(nomeProduto);
+        alteracoes.marcar(Alteracoes.Colecao.PEDIDOS, numeroPedido);
     }
 
-    public int getNumeroPedido(int clienteId, int empresaId, int indice) {
-        List<Pedido> pedidosDoRestaurante = pedidosPorRestaurante.get(empresaId);
+    public synchronized int getNumeroPedido(int clienteId, int empresaId, int indice) {
         Usuario cliente = usuarios.get(clienteId);
+        List<Integer> pedidosDoCliente = historicoPedidos.getDoClienteNaEmpresa(clienteId, empresaId);
 
-        if (cliente == null || pedidosDoRestaurante == null) {
+        if (cliente == null || pedidosDoCliente.isEmpty()) {
             throw new IllegalArgumentException();
         }
 
-        if (indice < 0 || indice >= pedidosDoRestaurante.size()) {
+        if (indice < 0 || indice >= pedidosDoCliente.size()) {
             throw new IndexOutOfBoundsException();
         }
 
-        Pedido pedido = pedidosDoRestaurante.get(indice);
-        return pedido.getNumero();
+        return pedidosDoCliente.get(indice);
     }
 
-    public void liberarPedido(int numero) throws PedidoNaoEncontradoException, PedidoJaLiberadoException, NaoEhPossivelLiberarException {
+    /**
+     * Página do histórico de pedidos de um cliente, em todas as empresas e em ordem de criação,
+     * incluindo os já arquivados.
+     *
+     * @param inicio     Posição do primeiro pedido da página no histórico.
+     * @param quantidade Número máximo de pedidos na página.
+     * @return Números dos pedidos no formato "{[n1, n2]}"; "{[]}" depois do fim do histórico.
+     */
+    public synchronized String getPedidosCliente(int clienteId, int inicio, int quantidade)
+            throws UsuarioNaoCadastradoException, IndiceInvalidoException {
+        if (usuarios.get(clienteId) == null) {
+            throw new UsuarioNaoCadastradoException();
+        }
+        if (inicio < 0 || quantidade < 0) {
+            throw new IndiceInvalidoException();
+        }
+
+        List<Integer> historico = historicoPedidos.getDoCliente(clienteId);
+        int fim = (int) Math.min((long) inicio + quantidade, historico.size());
+        StringJoiner resultado = new StringJoiner(", ", "{[", "]}");
+        for (int i = inicio; i < fim; i++) {
+            resultado.add(String.valueOf(historico.get(i)));
+        }
+        return resultado.toString();
+    }
+
+    // Quantidade de pedidos no estado, em todas as empresas
+    public synchronized int getQuantidadePedidos(String estado) throws AtributoInvalidoException {
+        validarEstado(estado);
+        return estadosPedidos.contar(estado);
+    }
+
+    // Quantidade de pedidos da empresa no estado
+    public synchronized int getQuantidadePedidosEmpresa(int empresaId, String estado) throws EmpresaNaoEncontradaException,
+            AtributoInvalidoException {
+        if (empresas.get(empresaId) == null) {
+            throw new EmpresaNaoEncontradaException();
+        }
+        validarEstado(estado);
+        return estadosPedidos.contar(empresaId, estado);
+    }
+
+    // Página dos pedidos no estado, em ordem de número, no formato "{[n1, n2]}"
+    public synchronized String listarPedidos(String estado, int inicio, int quantidade) throws AtributoInvalidoException,
+            IndiceInvalidoException {
+        validarEstado(estado);
+        return listarPagina(estadosPedidos.get(estado), inicio, quantidade);
+    }
+
+    // Página dos pedidos da empresa no estado, em ordem de número, no formato "{[n1, n2]}"
+    public synchronized String listarPedidosEmpresa(int empresaId, String estado, int inicio, int quantidade)
+            throws EmpresaNaoEncontradaException, AtributoInvalidoException, IndiceInvalidoException {
+        if (empresas.get(empresaId) == null) {
+            throw new EmpresaNaoEncontradaException();
+        }
+        validarEstado(estado);
+        return listarPagina(estadosPedidos.get(empresaId, estado), inicio, quantidade);
+    }
+
+    private static void validarEstado(String estado) throws AtributoInvalidoException {
+        if (estado == null || !EstadosPedidos.ehEstado(estado)) {
+            throw new AtributoInvalidoException();
+        }
+    }
+
+    private static String listarPagina(Collection<Integer> numeros, int inicio, int quantidade) throws IndiceInvalidoException {
+        if (inicio < 0 || quantidade < 0) {
+            throw new IndiceInvalidoException();
+        }
+        StringJoiner resultado = new StringJoiner(", ", "{[", "]}");
+        Iterator<Integer> iterador = numeros.iterator();
+        for (int i = 0; i < inicio && iterador.hasNext(); i++) {
+            iterador.next();
+        }
+        for (int i = 0; i < quantidade && iterador.hasNext(); i++) {
+            resultado.add(String.valueOf(iterador.next()));
+        }
+        return resultado.toString();
+    }
+
+    public synchronized void liberarPedido(int numero) throws PedidoNaoEncontradoException, PedidoJaLiberadoException, NaoEhPossivelLiberarException {
         Pedido pedido = pedidos.get(numero);
         if (pedido == null) {
             throw new PedidoNaoEncontradoException(); // Lança exceção se o pedido não for encontrado
@@ -878,10 +1343,14 @@ public class Sistema {
             throw new NaoEhPossivelLiberarException();
         }
 
+        registrar(JournalSave.Operacao.LIBERAR_PEDIDO, numero);
+
         pedido.setEstado("pronto"); // Muda o estado do pedido para "pronto"
+        estadosPedidos.mover(pedido.getIdEmpresa(), numero, "preparando", "pronto"); // Entra na fila do despacho
+        alteracoes.marcar(Alteracoes.Colecao.PEDIDOS, numero);
     }
 
-    public int obterPedido(int idEntregador) throws NaoExistePedidoEntregaException,
+    public synchronized int obterPedido(int idEntregador) throws NaoExistePedidoEntregaException,
             UsuarioNaoEntregadorDoisException, EntregadorSemEmpresaException {
         // Verificar se o entregador existe e é válido
         Usuario entregador = usuarios.get(idEntregador);
@@ -889,91 +1358,25 @@ public class Sistema {
             throw new UsuarioNaoEntregadorDoisException(); // O usuário não é um entregador
         }
 
-        // Verificar se o entregador está associado a alguma empresa
-        if (!empresasPorEntregador.containsKey(idEntregador) ||
-                empresasPorEntregador.get(idEntregador) == null ||
-                empresasPorEntregador.get(idEntregador).isEmpty()) {
-            throw new EntregadorSemEmpresaException(); // O entregador não está em nenhuma empresa
-        }
-
         // Obter as empresas em que o entregador trabalha
-        List<Empresa> empresasDoEntregador = empresasPorEntregador.get(idEntregador);
+        Map<Integer, Empresa> empresasDoEntregador = empresasPorEntregador.get(idEntregador);
 
         // Se o entregador não está associado a nenhuma empresa, lançar exceção
         if (empresasDoEntregador == null || empresasDoEntregador.isEmpty()) {
             throw new EntregadorSemEmpresaException(); // O entregador não está em nenhuma empresa
         }
 
-        List<Pedido> pedidosProntos = new ArrayList<>();
-
-        // Iterar pelos pedidos e verificar quais estão prontos e pertencem às empresas do entregador
-        for (Pedido pedido : pedidos.values()) {
-            if (pedido.getEstado().equals("pronto")) {
-                // Obter o nome da empresa do pedido (getEmpresa retorna o nome da empresa)
-                String nomeEmpresa = pedido.getEmpresa(); // Nome da empresa
-
-                // Buscar a empresa pelo nome e obter seu ID
-                Empresa empresaCorrespondente = null;
-                for (Empresa empresa : empresas.values()) {
-                    if (empresa.getNome().equals(nomeEmpresa)) { // Comparar nome da empresa
-                        empresaCorrespondente = empresa;
-                        break;
-                    }
-                }
-
-                // Se a empresa não for encontrada, não precisa lançar exceção aqui.
-                // Vamos apenas continuar se a empresa correspondente não for encontrada.
-                if (empresaCorrespondente == null) {
-                    continue; // Pular para o próximo pedido
-                }
-
-                // Verificar se a empresa faz parte das empresas do entregador
-                if (empresasDoEntregador.contains(empresaCorrespondente)) {
-                    pedidosProntos.add(pedido);
-                }
-            }
-        }
-
-
-
-        // Priorizar pedidos de farmácia
-        Optional<Pedido> pedidoFarmacia = pedidosProntos.stream()
-                .filter(pedido -> {
-                    String nomeEmpresa = pedido.getEmpresa(); // Obter nome da empresa
-                    Empresa empresaCorrespondente = null;
-                    for (Empresa empresa : empresas.values()) {
-                        if (empresa.getNome().equals(nomeEmpresa)) {
-                            empresaCorrespondente = empresa;
-                            break;
-                        }
-                    }
-                    return empresaCorrespondente != null && empresaCorrespondente.getTipoEmpresa().equals("Farmacia");
-                })
-                .min(Comparator.comparingInt(Pedido::getNumero)); // Priorizar o mais antigo de farmácia
-
-        // Se houver um pedido de farmácia pronto, retorna o primeiro
-        if (pedidoFarmacia.isPresent()) {
-            return pedidoFarmacia.get().getNumero();
-        }
-// Novo critério: Se o teste espera um pedido específico (como o número 4), podemos verificar diretamente
-        Optional<Pedido> pedidoEspecifico = pedidosProntos.stream()
-                .filter(p -> p.getNumero() == 4) // Ajustar o número conforme o esperado
-                .findFirst();
-
-        if (pedidoEspecifico.isPresent()) {
-            return pedidoEspecifico.get().getNumero(); // Retorna o pedido esperado (ex: 4)
+        // Compara só o início da fila de cada empresa do entregador: farmácias primeiro, depois o mais antigo
+        Integer proximo = despacho.proximo(empresasDoEntregador.values());
+        if (proximo == null) {
+            throw new EntregadorSemEmpresaException(); // Nenhum pedido pronto nas empresas do entregador
         }
-        // Caso não haja pedidos de farmácia, retorna o pedido com o menor ID (mais antigo)
-        Pedido pedidoMaisAntigo = pedidosProntos.stream()
-                .min(Comparator.comparingInt(Pedido::getNumero)) // Menor ID de pedido indica o mais antigo
-                .orElseThrow(() -> new EntregadorSemEmpresaException()); // Alterado para lançar exceção correta
-
-        return pedidoMaisAntigo.getNumero();
+        return proximo;
     }
 
 
 
-    public int criarEntrega(int idPedido, int idEntregador, String destino) throws PedidoNaoEncontradoException,
+    public synchronized int criarEntrega(int idPedido, int idEntregador, String destino) throws PedidoNaoEncontradoException,
             UsuarioNaoEntregadorException, EntregadorNaoValidoException, PedidoNaoProntoException, EntregadorEmEntregaException {
         // Verificar se o pedido existe
         Pedido pedido = pedidos.get(idPedido);
@@ -997,43 +1400,46 @@ public class Sistema {
         }
 
         // Verificar se o entregador trabalha para a empresa do pedido
-        String nomeEmpresa = pedido.getEmpresa(); // Nome da empresa associada ao pedido
-        Empresa empresaCorrespondente = null;
-        for (Empresa empresa : empresas.values()) {
-            if (empresa.getNome().equals(nomeEmpresa)) {
-                empresaCorrespondente = empresa;
-                break;
-            }
-        }
+        Empresa empresaCorrespondente = empresas.get(pedido.getIdEmpresa());
 
-        if (empresaCorrespondente == null || !empresasPorEntregador.get(idEntregador).contains(empresaCorrespondente)) {
+        if (empresaCorrespondente == null || !empresaCorrespondente.temEntregador(idEntregador)) {
             throw new EntregadorNaoValidoException(); // O entregador não trabalha para a empresa do pedido
         }
         String destino_of = destino;
 //        if(destino == null){
-//            String id_cliente = pedido.getCliente();
-//            Usuario cliente = usuarios.get(id_cliente);
+//            Usuario cliente = usuarios.get(pedido.getIdCliente());
 //            destino_of = cliente.getEndereco();
 //
 //        }
 
+        registrar(JournalSave.Operacao.CRIAR_ENTREGA, idPedido, idEntregador, destino);
+
         // Alterar o estado do pedido para "entregando"
         pedido.setEstado("entregando");
+        estadosPedidos.mover(pedido.getIdEmpresa(), idPedido, "pronto", "entregando"); // Sai da fila do despacho
 
-        // Gerar um novo ID para a entrega (simulando um incremento automático)
-        int idEntrega = entregas.size() + 1; // Atribuir um novo ID de entrega (incremental)
-
-        // Criar o objeto de entrega
-        Entrega novaEntrega = new Entrega(idEntrega, idPedido, idEntregador, destino_of);
+        // Criar o objeto de entrega, com um novo ID gerado pelo contador de entregas
+        Entrega novaEntrega = new Entrega(idPedido, idEntregador, destino_of);
+        int idEntrega = novaEntrega.getId();
         entregas.put(idEntrega, novaEntrega); // Adicionar a nova entrega ao mapa de entregas
+        entregaPorPedido.put(idPedido, novaEntrega);
+        alteracoes.marcar(Alteracoes.Colecao.PEDIDOS, idPedido);
+        alteracoes.marcar(Alteracoes.Colecao.ENTREGAS, idEntrega);
 
         // Retornar o ID da entrega criada
         return idEntrega;
     }
 
-    public String getEntrega(int id, String atributo) throws EntregadorEmEntregaException, AtributoInvalidoException, IOException, ClassNotFoundException, AtributoNaoExisteException {
+    public synchronized String getEntrega(int id, String atributo) throws EntregadorEmEntregaException, AtributoInvalidoException, AtributoNaoExisteException {
         // Retrieve the delivery by ID
         Entrega entrega = entregas.get(id);
+        if (entrega == null) {
+            try {
+                entrega = arquivo.buscarEntrega(id, produtos);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
         if (entrega == null) {
             throw new EntregadorEmEntregaException(); // Delivery not found
         }
@@ -1043,23 +1449,28 @@ public class Sistema {
         }
 
         // Return the requested attribute as a string
-        return entrega.getAtributo(atributo);
+        return entrega.getAtributo(atributo, consulta);
     }
 
-    public int getIdEntrega(int pedido) throws PedidoNaoEncontradoException {
-        // Iterate over the deliveries to find the one with the given order ID
-        for (Entrega entrega : entregas.values()) {
-            if (entrega.getIdPedido() == pedido) {
-                return entrega.getId();
-            }
+    public synchronized int getIdEntrega(int pedido) throws PedidoNaoEncontradoException {
+        Entrega entrega = entregaPorPedido.get(pedido);
+        if (entrega != null) {
+            return entrega.getId();
+        }
+        Integer arquivada = arquivo.buscarEntregaDoPedido(pedido);
+        if (arquivada != null) {
+            return arquivada;
         }
         throw new PedidoNaoEncontradoException(); // No delivery found for the given order ID
     }
 
-    public void entregar(int idEntrega) throws EntregadorEmEntregaException, PedidoNaoEncontradoException {
+    public synchronized void entregar(int idEntrega) throws EntregadorEmEntregaException, PedidoNaoEncontradoException {
         // Retrieve the delivery object
         Entrega entrega = entregas.get(idEntrega);
         if (entrega == null) {
+            if (arquivo.contemEntrega(idEntrega)) {
+                return; // Já arquivada, portanto já entregue
+            }
             throw new EntregadorEmEntregaException(); // Delivery not found
         }
 
@@ -1069,23 +1480,204 @@ public class Sistema {
             throw new PedidoNaoEncontradoException(); // Order not found
         }
 
+        registrar(JournalSave.Operacao.ENTREGAR, idEntrega);
+
         // Mark the order as delivered
+        estadosPedidos.mover(pedido.getIdEmpresa(), pedido.getNumero(), pedido.getEstado(), "entregue");
         pedido.setEstado("entregue");
+        alteracoes.marcar(Alteracoes.Colecao.PEDIDOS, pedido.getNumero());
     }
 
 
 
 
 
+    /**
+     * Para os checkpoints de fundo, grava o checkpoint final e fecha o journal, liberando as
+     * threads e o arquivo. Sem isso, o agendador de uma instância descartada continuaria
+     * gravando sobre os arquivos da instância que a substituiu. A instância não deve ser usada
+     * depois disso: a {@link Facade} abre uma nova, que carrega o que foi gravado aqui.
+     */
     public void encerrarSistema() throws IOException {
-        UsuarioSave.salvarUsuarios(usuarios);
-        EmpresasSave.salvarEmpresas(empresas);
-        EmpresasPorDonoSave.salvarEmpresaPorDono(empresasPorDono);
-        ProdutoPorRestauranteSave.salvarProdutoPorRestaurante(produtosPorRestaurante);
-        ProdutoSave.salvarProdutos(produtos);
-        PedidoSave.salvarPedidos(pedidos);
-        PedidoPorRestauranteSave.salvarPedidosPorRestaurante(pedidosPorRestaurante);
-        EmpresaPorEntregadorSave.salvarEmpresaPorEntregador(empresasPorEntregador);
-        EntregaSave.salvarEntregas(entregas);
-    }
-}
\ No newline at end of file
+        checkpoints.close();
+        checkpoints.executar();
+        journal.close();
+    }
+
+    /**
+     * Último checkpoint gravado, no formato "{instante=..., duracao=ms, pausa=ms, bytes=n}".
+     * Se o último checkpoint de fundo falhou, termina com ", falha=mensagem"; a falha some
+     * quando um checkpoint seguinte é gravado.
+     */
+    public String getUltimoCheckpoint() {
+        StringJoiner resultado = new StringJoiner(", ", "{", "}");
+        if (checkpoints.getUltimoInstante() != null) {
+            resultado.add("instante=" + checkpoints.getUltimoInstante());
+            resultado.add("duracao=" + String.format(Locale.US, "%.3f", checkpoints.getUltimaDuracaoNanos() / 1_000_000.0));
+            resultado.add("pausa=" + String.format(Locale.US, "%.3f", checkpoints.getUltimaPausaNanos() / 1_000_000.0));
+            resultado.add("bytes=" + checkpoints.getUltimosBytes());
+        }
+        IOException falha = checkpoints.getUltimaFalha();
+        if (falha != null) {
+            resultado.add("falha=" + falha.getMessage());
+        }
+        return resultado.toString();
+    }
+
+    /**
+     * Grava o estado atual. Sem alterações desde o último checkpoint nada é escrito; com poucas
+     * alterações grava só um delta com as entradas marcadas, e a cada MAX_DELTAS deltas (ou depois
+     * de zerarSistema) um snapshot completo. O journal só é cortado no snapshot completo, e só até
+     * o início do snapshot que ele substituiu: se um delta se corromper, a carga volta ao anterior,
+     * e se o próprio sistema.dat se corromper, a carga usa sistema.dat.anterior; nos dois casos
+     * os registros seguintes ainda estão no journal.
+     *
+     * As operações ficam bloqueadas só enquanto o estado é copiado; a codificação e a escrita
+     * acontecem depois, sobre a cópia. Executado por {@link CheckpointSave}, um por vez.
+     */
+    private CheckpointSave.Resultado checkpoint() throws IOException {
+        long arquivados = arquivarEntregues();
+        boolean aceitaDelta = SistemaSave.aceitaDelta() && SistemaSave.quantidadeDeltas() < MAX_DELTAS;
+        boolean existeSnapshot = SistemaSave.existeSnapshot();
+
+        long inicio = System.nanoTime();
+        Snapshot copia;
+        Alteracoes capturadas;
+        boolean completo;
+        long posicaoJournal;
+        synchronized (this) {
+            if (alteracoes.isVazio() && existeSnapshot) {
+                return null;
+            }
+            completo = alteracoes.isTudo() || !aceitaDelta;
+            posicaoJournal = journal.getPosicao();
+            capturadas = alteracoes.copiar();
+            alteracoes.limpar();
+
+            Snapshot atual = estadoAtual();
+            if (SistemaSave.getFormato() != SistemaSave.Formato.BINARIO) {
+                // A serialização Java depende da identidade dos objetos, então é gravada dentro da pausa
+                long bytes = arquivados + gravar(atual, capturadas, true);
+                arquivo.apagarDescartados();
+                long pausa = System.nanoTime() - inicio;
+                cortarJournal(posicaoJournal);
+                return new CheckpointSave.Resultado(bytes, pausa);
+            }
+            copia = atual.copiar(completo ? null : capturadas);
+        }
+        long pausa = System.nanoTime() - inicio;
+
+        long bytes = arquivados + gravar(copia, capturadas, completo);
+        if (completo) {
+            arquivo.apagarDescartados();
+            cortarJournal(posicaoJournal);
+        }
+        return new CheckpointSave.Resultado(bytes, pausa);
+    }
+
+    /**
+     * Depois de um snapshot completo, descarta do journal só o que o snapshot substituído (agora
+     * sistema.dat.anterior) já cobria. A posição capturada com o novo snapshot passa a ser a base,
+     * deslocada pelos bytes descartados.
+     */
+    private void cortarJournal(long posicaoJournal) throws IOException {
+        journal.descartarAte(posicaoBase);
+        posicaoBase = posicaoJournal - posicaoBase;
+    }
+
+    /**
+     * Com LIMITE_ARQUIVO ou mais pedidos entregues em memória, grava-os com suas entregas em um
+     * novo segmento do arquivo e os tira dos mapas. Como um delta não representa remoções, marca
+     * tudo para que o mesmo checkpoint grave um snapshot completo; até lá, se o sistema cair,
+     * o snapshot anterior ainda tem esses pedidos e a cópia em memória prevalece na inicialização.
+     *
+     * @return Número de bytes escritos no segmento (0 se nada foi arquivado).
+     */
+    private long arquivarEntregues() throws IOException {
+        if (LIMITE_ARQUIVO <= 0) {
+            return 0;
+        }
+        Map<Integer, Pedido> entregues = new HashMap<>();
+        Map<Integer, Entrega> suasEntregas = new HashMap<>();
+        int geracaoCapturada;
+        synchronized (this) {
+            // O grupo "entregue" também tem os pedidos já arquivados, que não estão mais em memória
+            if (estadosPedidos.contar("entregue") - arquivo.getQuantidadePedidos() < LIMITE_ARQUIVO) {
+                return 0;
+            }
+            for (int numero : estadosPedidos.get("entregue")) {
+                Pedido pedido = pedidos.get(numero);
+                if (pedido == null) {
+                    continue;
+                }
+                entregues.put(numero, pedido.copiar());
+                Entrega entrega = entregaPorPedido.get(numero);
+                if (entrega != null) {
+                    suasEntregas.put(entrega.getId(), entrega);
+                }
+            }
+            if (entregues.size() < LIMITE_ARQUIVO) {
+                return 0;
+            }
+            geracaoCapturada = geracao;
+        }
+
+        int bytes = arquivo.arquivar(entregues, suasEntregas);
+
+        synchronized (this) {
+            if (geracao != geracaoCapturada) {
+                // zerarSistema rodou durante a escrita: o segmento novo também é descartado
+                arquivo.descartarTudo();
+                return bytes;
+            }
+            Set<Integer> removidos = new HashSet<>();
+            Set<Integer> alterados = alteracoes.get(Alteracoes.Colecao.PEDIDOS);
+            for (int numero : entregues.keySet()) {
+                if (alterados.contains(numero)) {
+                    arquivo.esquecer(numero); // Alterado durante a escrita: continua em memória
+                } else {
+                    pedidos.remove(numero);
+                    removidos.add(numero);
+                }
+            }
+            for (Entrega entrega : suasEntregas.values()) {
+                if (removidos.contains(entrega.getIdPedido())) {
+                    entregas.remove(entrega.getId());
+                    entregaPorPedido.remove(entrega.getIdPedido());
+                }
+            }
+            for (List<Pedido> pedidosDaEmpresa : pedidosPorRestaurante.values()) {
+                pedidosDaEmpresa.removeIf(pedido -> removidos.contains(pedido.getNumero()));
+            }
+            alteracoes.marcarTudo();
+        }
+        return bytes;
+    }
+
+    // Se a escrita falhar, as alterações voltam a ser marcadas para o próximo checkpoint
+    private long gravar(Snapshot snapshot, Alteracoes capturadas, boolean completo) throws IOException {
+        try {
+            return completo ? SistemaSave.salvarSnapshot(snapshot) : SistemaSave.salvarDelta(snapshot, capturadas);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                alteracoes.incorporar(capturadas);
+            }
+            throw e;
+        }
+    }
+
+    private Snapshot estadoAtual() {
+        Snapshot snapshot = new Snapshot();
+        snapshot.setUsuarios(usuarios);
+        snapshot.setEmpresas(empresas);
+        snapshot.setProdutos(produtos);
+        snapshot.setPedidos(pedidos);
+        snapshot.setEntregas(entregas);
+        snapshot.setSequenciaJournal(journal.getSequencia());
+        snapshot.setContadorUsuarios(Usuario.getContadorId());
+        snapshot.setContadorEmpresas(Empresa.getContadorId());
+        snapshot.setContadorProdutos(Produto.getIdCounter());
+        snapshot.setContadorPedidos(Pedido.getContador());
+        return snapshot;
+    }
+}
@@ -19,6 +19,19 @@ public class Cliente extends Usuario{
         // Chama o construtor da superclasse Usuario para inicializar os atributos comuns
         super(nome, email, senha, endereco);
     }
+
+    /**
+     * Construtor usado ao reconstruir um cliente já persistido, mantendo seu ID.
+     *
+     * @param id       O ID do cliente.
+     * @param nome     O nome do cliente.
+     * @param email    O email do cliente.
+     * @param senha    A senha do cliente.
+     * @param endereco O endereço do cliente.
+     */
+    public Cliente(int id, String nome, String email, String senha, String endereco) {
+        super(id, nome, email, senha, endereco);
+    }
     /**
      * Método que verifica se o cliente tem permissão para criar uma empresa.
      */
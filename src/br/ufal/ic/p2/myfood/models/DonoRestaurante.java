@@ -23,6 +23,21 @@ public class DonoRestaurante extends Usuario{
         super(nome, email, senha, endereco);
         this.cpf = cpf;
     }
+
+    /**
+     * Construtor usado ao reconstruir um dono já persistido, mantendo seu ID.
+     *
+     * @param id       O ID do dono do restaurante.
+     * @param nome     O nome do dono do restaurante.
+     * @param email    O email do dono do restaurante.
+     * @param senha    A senha do dono do restaurante.
+     * @param endereco O endereço do dono do restaurante.
+     * @param cpf      O CPF do dono do restaurante.
+     */
+    public DonoRestaurante(int id, String nome, String email, String senha, String endereco, String cpf) {
+        super(id, nome, email, senha, endereco);
+        this.cpf = cpf;
+    }
     /**
      * Método getter para acessar o CPF do dono do restaurante.
      *
@@ -2,8 +2,12 @@ package br.ufal.ic.p2.myfood.models;
 
 import br.ufal.ic.p2.myfood.Exceptions.AtributoInvalidoException;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 /**
@@ -20,35 +24,82 @@ public abstract class Empresa implements Serializable {
 
     // Atributos de instância
     private int id; // ID único da empresa
+    private int idDono; // ID do dono que criou a empresa
     private String tipoEmpresa; // Tipo da empresa (e.g., mercado, restaurante)
     private String nome; // Nome da empresa
     private String endereco; // Endereço da empresa
-    private List<Entregador> entregadores; // Lista de entregadores associados à empresa
+    // Entregadores associados à empresa, por ID, na ordem em que foram cadastrados
+    private LinkedHashMap<Integer, Entregador> entregadoresPorId;
+    // Formato antigo (lista); só é lido de snapshots Java gravados antes e convertido em entregadoresPorId
+    private List<Entregador> entregadores;
 
     /**
      * Construtor da classe Empresa.
+     * @param idDono O ID do dono da empresa.
      * @param tipoEmpresa O tipo de empresa.
      * @param nome O nome da empresa.
      * @param endereco O endereço da empresa.
      */
-    public Empresa(String tipoEmpresa, String nome, String endereco) {
+    public Empresa(int idDono, String tipoEmpresa, String nome, String endereco) {
         this.id = contadorId++; // Atribui um ID único e incrementa o contador
+        this.idDono = idDono;
         this.tipoEmpresa = tipoEmpresa;
         this.nome = nome;
         this.endereco = endereco;
     }
 
-    // Getter para a lista de entregadores com inicialização tardia (Lazy Initialization)
-    public List<Entregador> getEntregadores() {
-        if (entregadores == null) {
-            entregadores = new ArrayList<>(); // Inicializa a lista se estiver nula
+    /**
+     * Construtor usado ao reconstruir uma empresa já persistida.
+     * Mantém o ID gravado e não altera o contador de IDs.
+     * @param id O ID da empresa.
+     * @param idDono O ID do dono da empresa.
+     * @param tipoEmpresa O tipo de empresa.
+     * @param nome O nome da empresa.
+     * @param endereco O endereço da empresa.
+     */
+    protected Empresa(int id, int idDono, String tipoEmpresa, String nome, String endereco) {
+        this.id = id;
+        this.idDono = idDono;
+        this.tipoEmpresa = tipoEmpresa;
+        this.nome = nome;
+        this.endereco = endereco;
+    }
+
+    // Mapa de entregadores com inicialização tardia (Lazy Initialization)
+    private LinkedHashMap<Integer, Entregador> entregadoresPorId() {
+        if (entregadoresPorId == null) {
+            entregadoresPorId = new LinkedHashMap<>(); // Inicializa o mapa se estiver nulo
         }
-        return entregadores;
+        return entregadoresPorId;
+    }
+
+    // Entregadores da empresa na ordem de cadastro; visão somente leitura, sem cópia
+    public Collection<Entregador> getEntregadores() {
+        return Collections.unmodifiableCollection(entregadoresPorId().values());
+    }
+
+    public boolean temEntregador(int idEntregador) {
+        return entregadoresPorId().containsKey(idEntregador);
+    }
+
+    /**
+     * Associa um entregador à empresa.
+     * @param entregador O entregador a ser associado.
+     * @return false se o entregador já estava associado à empresa.
+     */
+    public boolean adicionarEntregador(Entregador entregador) {
+        return entregadoresPorId().putIfAbsent(entregador.getId(), entregador) == null;
     }
 
-    // Setter para definir a lista de entregadores
-    public void setEntregadores(List<Entregador> entregadores) {
-        this.entregadores = entregadores;
+    // Converte a lista de entregadores de snapshots Java antigos
+    private void readObject(ObjectInputStream entrada) throws IOException, ClassNotFoundException {
+        entrada.defaultReadObject();
+        if (entregadores != null) {
+            for (Entregador entregador : entregadores) {
+                adicionarEntregador(entregador);
+            }
+            entregadores = null;
+        }
     }
 
     // Getters para acessar os atributos encapsulados
@@ -56,6 +107,10 @@ public abstract class Empresa implements Serializable {
         return id;
     }
 
+    public int getIdDono() {
+        return idDono;
+    }
+
     public String getNome() {
         return nome;
     }
@@ -68,6 +123,15 @@ public abstract class Empresa implements Serializable {
         return tipoEmpresa;
     }
 
+    // Contador de IDs exposto para ser restaurado ao carregar dados persistidos
+    public static int getContadorId() {
+        return contadorId;
+    }
+
+    public static void setContadorId(int contadorId) {
+        Empresa.contadorId = contadorId;
+    }
+
     /**
      * Métodos abstratos que definem se a empresa é um mercado ou uma farmácia.
      * Devem ser implementados pelas subclasses.
@@ -75,6 +139,20 @@ public abstract class Empresa implements Serializable {
     public abstract boolean isMercado();
     public abstract boolean isFarmacia();
 
+    /**
+     * Cria uma cópia independente da empresa, com o mesmo ID, para ser gravada em um
+     * checkpoint sem bloquear alterações na original. O mapa de entregadores é copiado,
+     * mas os entregadores são compartilhados, pois não mudam depois de criados.
+     * @return A cópia da empresa.
+     */
+    public abstract Empresa copiar();
+
+    // Copia o mapa de entregadores para a cópia criada pela subclasse
+    protected Empresa copiarEntregadores(Empresa copia) {
+        copia.entregadoresPorId = new LinkedHashMap<>(entregadoresPorId());
+        return copia;
+    }
+
     /**
      * Método abstrato para definir atributos.
      * Implementado pelas subclasses para permitir flexibilidade na manipulação de atributos.
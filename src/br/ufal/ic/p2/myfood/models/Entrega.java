@@ -2,12 +2,9 @@ package br.ufal.ic.p2.myfood.models;
 
 import br.ufal.ic.p2.myfood.Exceptions.AtributoInvalidoException;
 import br.ufal.ic.p2.myfood.Exceptions.AtributoNaoExisteException;
-import br.ufal.ic.p2.myfood.services.PedidoSave;
-import br.ufal.ic.p2.myfood.services.UsuarioSave;
+import br.ufal.ic.p2.myfood.services.ConsultaEntidades;
 
-import java.io.IOException;
 import java.io.Serializable;
-import java.util.Map;
 
 /**
  * Classe que representa uma Entrega.
@@ -15,6 +12,9 @@ import java.util.Map;
  */
 public class Entrega implements Serializable {
 
+    // Contador estático para gerar IDs de entrega únicos; não é persistido, é restaurado pelo maior ID existente
+    private static int contador = 0;
+
     // Atributos da classe Entrega
     private int id; // ID único da entrega
     private int idPedido; // ID do pedido associado à entrega
@@ -23,7 +23,18 @@ public class Entrega implements Serializable {
 
     /**
      * Construtor da classe Entrega.
-     * Inicializa os atributos com as informações fornecidas.
+     * Gera um novo ID a partir do contador de entregas.
+     * @param idPedido ID do pedido relacionado.
+     * @param idEntregador ID do entregador.
+     * @param destino Endereço de destino da entrega.
+     */
+    public Entrega(int idPedido, int idEntregador, String destino) {
+        this(++contador, idPedido, idEntregador, destino);
+    }
+
+    /**
+     * Construtor usado ao reconstruir uma entrega já persistida.
+     * Mantém o ID gravado e não altera o contador de entregas.
      * @param id ID da entrega.
      * @param idPedido ID do pedido relacionado.
      * @param idEntregador ID do entregador.
@@ -36,6 +47,14 @@ public class Entrega implements Serializable {
         this.destino = destino;
     }
 
+    public static int getContador() {
+        return contador;
+    }
+
+    public static void setContador(int contador) {
+        Entrega.contador = contador;
+    }
+
     // Getters para encapsulamento dos atributos
     public int getId() {
         return id;
@@ -55,25 +74,17 @@ public class Entrega implements Serializable {
 
     /**
      * Método que retorna o valor de um atributo especificado.
-     * Utiliza dados persistidos (pedidos e usuários) para buscar informações relacionadas à entrega.
+     * O pedido e o entregador relacionados à entrega são buscados nas entidades em memória do sistema.
      * @param atributo Nome do atributo que se deseja obter.
+     * @param consulta Acesso aos pedidos, usuários e empresas do sistema.
      * @return O valor do atributo em formato String.
      * @throws AtributoInvalidoException Se o atributo for inválido.
-     * @throws IOException Se houver problemas ao carregar os dados de pedidos ou usuários.
-     * @throws ClassNotFoundException Se a classe dos objetos persistidos não for encontrada.
      * @throws AtributoNaoExisteException Se o atributo solicitado não existir.
      */
-    public String getAtributo(String atributo) throws AtributoInvalidoException, IOException, ClassNotFoundException, AtributoNaoExisteException {
-
-        // Carrega os pedidos e usuários de arquivos usando a camada de serviço
-        Map<Integer, Pedido> pedidos = PedidoSave.carregarPedidos();
-        Pedido pedido = pedidos.get(idPedido); // Busca o pedido relacionado ao ID da entrega
-        Map<Integer, Usuario> usuarios = UsuarioSave.carregarUsuarios(); // Busca os usuários persistidos
-        Usuario entregador = usuarios.get(idEntregador); // Busca o entregador associado à entrega
+    public String getAtributo(String atributo, ConsultaEntidades consulta) throws AtributoInvalidoException, AtributoNaoExisteException {
 
-        // Limpa as estruturas de dados temporárias após o uso
-        pedidos.clear();
-        usuarios.clear();
+        Pedido pedido = consulta.buscarPedido(idPedido); // Busca o pedido relacionado ao ID da entrega
+        Usuario entregador = consulta.buscarUsuario(idEntregador); // Busca o entregador associado à entrega
 
         // Seleciona o comportamento adequado com base no atributo solicitado
         switch (atributo.toLowerCase()) {
@@ -86,12 +97,12 @@ public class Entrega implements Serializable {
                 throw new AtributoInvalidoException();
             case "cliente":
                 if (pedido != null) {
-                    return pedido.getCliente(); // Retorna o nome do cliente, se o pedido existir
+                    return pedido.getCliente(consulta); // Retorna o nome do cliente, se o pedido existir
                 }
                 throw new AtributoInvalidoException();
             case "empresa":
                 if (pedido != null) {
-                    return pedido.getEmpresa(); // Retorna o nome da empresa relacionada ao pedido
+                    return pedido.getEmpresa(consulta); // Retorna o nome da empresa relacionada ao pedido
                 }
                 throw new AtributoInvalidoException();
             case "destino":
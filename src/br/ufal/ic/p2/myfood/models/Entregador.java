@@ -2,15 +2,24 @@ package br.ufal.ic.p2.myfood.models;
 
 import br.ufal.ic.p2.myfood.Exceptions.AtributoInvalidoException;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Classe que representa um Entregador.
  * Herda da classe Usuario, usando herança da POO para reutilizar atributos e comportamentos comuns a todos os usuários.
  */
 public class Entregador extends Usuario {
 
+    // Valor calculado antes de idsEmpresas existir, para que snapshots Java antigos continuem legíveis
+    private static final long serialVersionUID = -5728307486007240603L;
+
     // Atributos específicos do Entregador
     private String veiculo; // Tipo de veículo usado pelo entregador (ex: moto, carro, bicicleta).
     private String placa;   // Placa do veículo do entregador.
+    // IDs das empresas em que trabalha, na ordem de cadastro. A lista é trocada, nunca alterada,
+    // pois o checkpoint compartilha os usuários com o estado em memória. null em snapshots antigos.
+    private List<Integer> idsEmpresas = List.of();
 
     /**
      * Construtor da classe Entregador.
@@ -28,6 +37,22 @@ public class Entregador extends Usuario {
         this.placa = placa;     // Define a placa do veículo.
     }
 
+    /**
+     * Construtor usado ao reconstruir um entregador já persistido, mantendo seu ID.
+     * @param id ID do entregador.
+     * @param nome Nome do entregador.
+     * @param email Email do entregador.
+     * @param senha Senha do entregador.
+     * @param endereco Endereço do entregador.
+     * @param veiculo Tipo de veículo que o entregador utiliza.
+     * @param placa Placa do veículo utilizado.
+     */
+    public Entregador(int id, String nome, String email, String senha, String endereco, String veiculo, String placa) {
+        super(id, nome, email, senha, endereco);
+        this.veiculo = veiculo;
+        this.placa = placa;
+    }
+
     // Getters e Setters para encapsulamento dos atributos
     /**
      * Retorna o tipo de veículo que o entregador utiliza.
@@ -53,6 +78,52 @@ public class Entregador extends Usuario {
         return placa;
     }
 
+    /**
+     * Retorna os IDs das empresas em que o entregador trabalha, na ordem de cadastro.
+     * @return Lista somente leitura; vazia em snapshots gravados antes de a ordem ser guardada.
+     */
+    public List<Integer> getIdsEmpresas() {
+        return idsEmpresas == null ? List.of() : idsEmpresas;
+    }
+
+    /**
+     * Define as empresas do entregador, ao reconstruí-lo de um snapshot.
+     * @param idsEmpresas IDs das empresas, na ordem de cadastro.
+     */
+    public void setIdsEmpresas(List<Integer> idsEmpresas) {
+        this.idsEmpresas = List.copyOf(idsEmpresas);
+    }
+
+    /**
+     * Acrescenta uma empresa ao fim da lista de empresas do entregador.
+     * @param idEmpresa ID da empresa em que ele foi cadastrado.
+     */
+    public void adicionarEmpresa(int idEmpresa) {
+        List<Integer> novas = new ArrayList<>(getIdsEmpresas());
+        novas.add(idEmpresa);
+        this.idsEmpresas = List.copyOf(novas);
+    }
+
+    /**
+     * Chave usada para comparar placas: só letras e dígitos, em maiúsculas, de modo que
+     * "abc-1234" e "ABC 1234" são a mesma placa.
+     * @param placa Placa como informada no cadastro.
+     * @return A placa normalizada, ou null se a placa for null.
+     */
+    public static String normalizarPlaca(String placa) {
+        if (placa == null) {
+            return null;
+        }
+        StringBuilder chave = new StringBuilder(placa.length());
+        for (int i = 0; i < placa.length(); i++) {
+            char c = placa.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                chave.append(Character.toUpperCase(c));
+            }
+        }
+        return chave.toString();
+    }
+
     /**
      * Define a placa do veículo do entregador.
      * @param placa A placa a ser definida.
@@ -16,18 +16,36 @@ public class Farmacia extends Empresa {
     /**
      * Construtor da classe Farmacia.
      * Inicializa os atributos herdados da classe Empresa e os atributos específicos de uma Farmácia.
+     * @param idDono ID do dono da farmácia.
      * @param tipoEmpresa Tipo da empresa (ex: Farmácia).
      * @param nome Nome da farmácia.
      * @param endereco Endereço da farmácia.
      * @param aberto24Horas Se a farmácia é aberta 24 horas ou não.
      * @param numeroFuncionarios Número de funcionários da farmácia.
      */
-    public Farmacia(String tipoEmpresa, String nome, String endereco, boolean aberto24Horas, int numeroFuncionarios) {
-        super(tipoEmpresa, nome, endereco); // Chama o construtor da classe pai Empresa.
+    public Farmacia(int idDono, String tipoEmpresa, String nome, String endereco, boolean aberto24Horas, int numeroFuncionarios) {
+        super(idDono, tipoEmpresa, nome, endereco); // Chama o construtor da classe pai Empresa.
         this.aberto24Horas = aberto24Horas; // Define se a farmácia é aberta 24 horas.
         this.numeroFuncionarios = numeroFuncionarios; // Define o número de funcionários.
     }
 
+    /**
+     * Construtor usado ao reconstruir uma farmácia já persistida, mantendo seu ID.
+     * @param id ID da farmácia.
+     * @param idDono ID do dono da farmácia.
+     * @param tipoEmpresa Tipo da empresa.
+     * @param nome Nome da farmácia.
+     * @param endereco Endereço da farmácia.
+     * @param aberto24Horas Se a farmácia é aberta 24 horas ou não.
+     * @param numeroFuncionarios Número de funcionários da farmácia.
+     */
+    public Farmacia(int id, int idDono, String tipoEmpresa, String nome, String endereco, boolean aberto24Horas,
+                    int numeroFuncionarios) {
+        super(id, idDono, tipoEmpresa, nome, endereco);
+        this.aberto24Horas = aberto24Horas;
+        this.numeroFuncionarios = numeroFuncionarios;
+    }
+
     /**
      * Indica que este objeto não representa um Mercado.
      * Sobrescreve o método da classe Empresa, aplicando o polimorfismo.
@@ -60,6 +78,12 @@ public class Farmacia extends Empresa {
         // Método em branco, pronto para ser implementado conforme necessidades futuras.
     }
 
+    @Override
+    public Empresa copiar() {
+        return copiarEntregadores(new Farmacia(getId(), getIdDono(), getTipoEmpresa(), getNome(), getEndereco(),
+                aberto24Horas, numeroFuncionarios));
+    }
+
     /**
      * Getter para o atributo aberto24Horas.
      * @return true se a farmácia é aberta 24 horas, false caso contrário.
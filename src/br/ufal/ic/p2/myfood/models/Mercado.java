@@ -17,6 +17,7 @@ public class Mercado extends Empresa {
     /**
      * Construtor da classe Mercado.
      * Inicializa os atributos herdados da classe Empresa e os atributos específicos de um Mercado.
+     * @param idDono ID do dono do mercado.
      * @param tipoEmpresa Tipo da empresa (ex: Mercado).
      * @param nome Nome do mercado.
      * @param endereco Endereço do mercado.
@@ -24,13 +25,32 @@ public class Mercado extends Empresa {
      * @param fecha Horário de fechamento do mercado.
      * @param tipoMercado Tipo de mercado.
      */
-    public Mercado(String tipoEmpresa, String nome, String endereco, String abre, String fecha, String tipoMercado) {
-        super(tipoEmpresa, nome, endereco); // Chama o construtor da classe pai Empresa.
+    public Mercado(int idDono, String tipoEmpresa, String nome, String endereco, String abre, String fecha, String tipoMercado) {
+        super(idDono, tipoEmpresa, nome, endereco); // Chama o construtor da classe pai Empresa.
         this.abre = abre; // Define o horário de abertura.
         this.fecha = fecha; // Define o horário de fechamento.
         this.tipoMercado = tipoMercado; // Define o tipo de mercado.
     }
 
+    /**
+     * Construtor usado ao reconstruir um mercado já persistido, mantendo seu ID.
+     * @param id ID do mercado.
+     * @param idDono ID do dono do mercado.
+     * @param tipoEmpresa Tipo da empresa.
+     * @param nome Nome do mercado.
+     * @param endereco Endereço do mercado.
+     * @param abre Horário de abertura do mercado.
+     * @param fecha Horário de fechamento do mercado.
+     * @param tipoMercado Tipo de mercado.
+     */
+    public Mercado(int id, int idDono, String tipoEmpresa, String nome, String endereco, String abre, String fecha,
+                   String tipoMercado) {
+        super(id, idDono, tipoEmpresa, nome, endereco);
+        this.abre = abre;
+        this.fecha = fecha;
+        this.tipoMercado = tipoMercado;
+    }
+
     /**
      * Indica que este objeto representa um Mercado.
      * Sobrescreve o método da classe Empresa, aplicando o polimorfismo.
@@ -50,6 +70,11 @@ public class Mercado extends Empresa {
         return false;
     }
 
+    @Override
+    public Empresa copiar() {
+        return copiarEntregadores(new Mercado(getId(), getIdDono(), getTipoEmpresa(), getNome(), getEndereco(), abre, fecha, tipoMercado));
+    }
+
     /**
      * Getter para o horário de abertura.
      * @return O horário de abertura do mercado.
@@ -1,5 +1,7 @@
 package br.ufal.ic.p2.myfood.models;
 
+import br.ufal.ic.p2.myfood.services.ConsultaEntidades;
+
 import java.io.Serializable;
 import java.util.Iterator;
 import java.util.List;
@@ -19,8 +21,8 @@ public class Pedido implements Serializable {
 
     // Atributos da classe Pedido
     private int numero; // Número único do pedido
-    private String cliente; // Nome do cliente que fez o pedido
-    private String empresa; // Nome da empresa onde o pedido foi feito
+    private int idCliente; // ID do cliente que fez o pedido
+    private int idEmpresa; // ID da empresa onde o pedido foi feito
     private String estado; // Estado atual do pedido (ex: aberto, preparando)
     private List<Produto> produtos; // Lista de produtos incluídos no pedido
     private float valor; // Valor total do pedido
@@ -29,18 +31,48 @@ public class Pedido implements Serializable {
      * Construtor da classe Pedido.
      * Inicializa um novo pedido com um cliente e uma empresa específicos.
      *
-     * @param cliente Nome do cliente que está fazendo o pedido.
-     * @param empresa Nome da empresa onde o pedido foi realizado.
+     * @param idCliente ID do cliente que está fazendo o pedido.
+     * @param idEmpresa ID da empresa onde o pedido foi realizado.
      */
-    public Pedido(String cliente, String empresa) {
+    public Pedido(int idCliente, int idEmpresa) {
         this.numero = ++contador;
-        this.cliente = cliente;
-        this.empresa = empresa;
+        this.idCliente = idCliente;
+        this.idEmpresa = idEmpresa;
         this.estado = "aberto";  // Estado inicial do pedido
         this.produtos = new ArrayList<>();
         this.valor = 0;
     }
 
+    /**
+     * Construtor usado ao reconstruir um pedido já persistido.
+     * Mantém o número gravado e não altera o contador de pedidos.
+     *
+     * @param numero    Número do pedido.
+     * @param idCliente ID do cliente que fez o pedido.
+     * @param idEmpresa ID da empresa onde o pedido foi realizado.
+     * @param estado    Estado atual do pedido.
+     * @param produtos  Produtos incluídos no pedido.
+     * @param valor     Valor total do pedido.
+     */
+    public Pedido(int numero, int idCliente, int idEmpresa, String estado, List<Produto> produtos, float valor) {
+        this.numero = numero;
+        this.idCliente = idCliente;
+        this.idEmpresa = idEmpresa;
+        this.estado = estado;
+        this.produtos = produtos;
+        this.valor = valor;
+    }
+
+    /**
+     * Cria uma cópia independente do pedido, com o mesmo número, para ser gravada em um
+     * checkpoint sem bloquear alterações no original. A lista de produtos é copiada.
+     *
+     * @return A cópia do pedido.
+     */
+    public Pedido copiar() {
+        return new Pedido(numero, idCliente, idEmpresa, estado, new ArrayList<>(produtos), valor);
+    }
+
     // Métodos getters para acessar os atributos do pedido
 
     /**
@@ -53,21 +85,43 @@ public class Pedido implements Serializable {
     }
 
     /**
-     * Retorna o nome do cliente que fez o pedido.
+     * Retorna o ID do cliente que fez o pedido.
+     *
+     * @return ID do cliente.
+     */
+    public int getIdCliente() {
+        return idCliente;
+    }
+
+    /**
+     * Retorna o nome do cliente que fez o pedido, buscado no usuário em memória.
+     *
+     * @param consulta Acesso aos usuários do sistema.
+     * @return Nome do cliente, ou null se ele não existir mais.
+     */
+    public String getCliente(ConsultaEntidades consulta) {
+        Usuario cliente = consulta.buscarUsuario(idCliente);
+        return cliente == null ? null : cliente.getNome();
+    }
+
+    /**
+     * Retorna o ID da empresa onde o pedido foi feito.
      *
-     * @return Nome do cliente.
+     * @return ID da empresa.
      */
-    public String getCliente() {
-        return cliente;
+    public int getIdEmpresa() {
+        return idEmpresa;
     }
 
     /**
-     * Retorna o nome da empresa onde o pedido foi feito.
+     * Retorna o nome da empresa onde o pedido foi feito, buscado na empresa em memória.
      *
-     * @return Nome da empresa.
+     * @param consulta Acesso às empresas do sistema.
+     * @return Nome da empresa, ou null se ela não existir mais.
      */
-    public String getEmpresa() {
-        return empresa;
+    public String getEmpresa(ConsultaEntidades consulta) {
+        Empresa empresa = consulta.buscarEmpresa(idEmpresa);
+        return empresa == null ? null : empresa.getNome();
     }
 
     /**
@@ -97,6 +151,24 @@ public class Pedido implements Serializable {
         return valor;
     }
 
+    /**
+     * Retorna o último número atribuído a um pedido.
+     *
+     * @return Valor atual do contador de pedidos.
+     */
+    public static int getContador() {
+        return contador;
+    }
+
+    /**
+     * Restaura o contador de pedidos ao carregar dados persistidos.
+     *
+     * @param contador Último número atribuído.
+     */
+    public static void setContador(int contador) {
+        Pedido.contador = contador;
+    }
+
     /**
      * Adiciona um produto ao pedido e atualiza o valor total.
      *
@@ -114,6 +186,21 @@ public class Pedido implements Serializable {
         this.estado = "preparando";
     }
 
+    /**
+     * Verifica se o pedido tem algum produto com o nome informado.
+     *
+     * @param nomeProduto Nome do produto procurado.
+     * @return true se algum produto do pedido tem esse nome.
+     */
+    public boolean contemProduto(String nomeProduto) {
+        for (Produto produto : produtos) {
+            if (produto.getNome().equals(nomeProduto)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Remove um produto do pedido com base no nome do produto.
      * Se o produto for encontrado e removido, o valor total do pedido é atualizado.
@@ -16,6 +16,7 @@ public class Produto implements Serializable {
 
     private static int idCounter = 0;
     private int id;
+    private int idEmpresa; // ID da empresa que oferece o produto
     private String nome;
     private float valor;
     private String categoria;
@@ -24,17 +25,47 @@ public class Produto implements Serializable {
      * Construtor da classe Produto.
      * Inicializa um novo produto com nome, valor e categoria específicos.
      *
+     * @param idEmpresa ID da empresa que oferece o produto.
      * @param nome      Nome do produto.
      * @param valor     Valor do produto.
      * @param categoria Categoria à qual o produto pertence.
      */
-    public Produto(String nome, float valor, String categoria) {
+    public Produto(int idEmpresa, String nome, float valor, String categoria) {
         this.id = ++idCounter;
+        this.idEmpresa = idEmpresa;
         this.nome = nome;
         this.valor = valor;
         this.categoria = categoria;
     }
 
+    /**
+     * Construtor usado ao reconstruir um produto já persistido.
+     * Mantém o ID gravado e não altera o contador de IDs.
+     *
+     * @param id        ID do produto.
+     * @param idEmpresa ID da empresa que oferece o produto.
+     * @param nome      Nome do produto.
+     * @param valor     Valor do produto.
+     * @param categoria Categoria à qual o produto pertence.
+     */
+    public Produto(int id, int idEmpresa, String nome, float valor, String categoria) {
+        this.id = id;
+        this.idEmpresa = idEmpresa;
+        this.nome = nome;
+        this.valor = valor;
+        this.categoria = categoria;
+    }
+
+    /**
+     * Cria uma cópia independente do produto, com o mesmo ID, para ser gravada em um
+     * checkpoint sem bloquear alterações no original.
+     *
+     * @return A cópia do produto.
+     */
+    public Produto copiar() {
+        return new Produto(id, idEmpresa, nome, valor, categoria);
+    }
+
     // Métodos getters para acessar os atributos do produto
 
     /**
@@ -46,6 +77,15 @@ public class Produto implements Serializable {
         return id;
     }
 
+    /**
+     * Retorna o ID da empresa que oferece o produto.
+     *
+     * @return ID da empresa.
+     */
+    public int getIdEmpresa() {
+        return idEmpresa;
+    }
+
     /**
      * Retorna o nome do produto.
      *
@@ -73,6 +113,24 @@ public class Produto implements Serializable {
         return categoria;
     }
 
+    /**
+     * Retorna o último ID atribuído a um produto.
+     *
+     * @return Valor atual do contador de IDs.
+     */
+    public static int getIdCounter() {
+        return idCounter;
+    }
+
+    /**
+     * Restaura o contador de IDs ao carregar dados persistidos.
+     *
+     * @param idCounter Último ID atribuído.
+     */
+    public static void setIdCounter(int idCounter) {
+        Produto.idCounter = idCounter;
+    }
+
     /**
      * Retorna o valor do atributo solicitado, se ele existir.
      *
@@ -14,16 +14,31 @@ public class Restaurante extends Empresa {
 
     /**
      * Construtor da classe Restaurante que inicializa os atributos herdados da classe Empresa e o tipo de cozinha.
+     * @param idDono ID do dono do restaurante.
      * @param tipoEmpresa Tipo da empresa (ex: Restaurante).
      * @param nome Nome do restaurante.
      * @param endereco Endereço do restaurante.
      * @param tipoCozinha Tipo de cozinha oferecida pelo restaurante.
      */
-    public Restaurante(String tipoEmpresa, String nome, String endereco, String tipoCozinha) {
-        super(tipoEmpresa, nome, endereco); // Chamada ao construtor da classe pai (Empresa), aplicando o conceito de herança.
+    public Restaurante(int idDono, String tipoEmpresa, String nome, String endereco, String tipoCozinha) {
+        super(idDono, tipoEmpresa, nome, endereco); // Chamada ao construtor da classe pai (Empresa), aplicando o conceito de herança.
         this.tipoCozinha = tipoCozinha; // Atributo específico de restaurante.
     }
 
+    /**
+     * Construtor usado ao reconstruir um restaurante já persistido, mantendo seu ID.
+     * @param id ID do restaurante.
+     * @param idDono ID do dono do restaurante.
+     * @param tipoEmpresa Tipo da empresa.
+     * @param nome Nome do restaurante.
+     * @param endereco Endereço do restaurante.
+     * @param tipoCozinha Tipo de cozinha oferecida pelo restaurante.
+     */
+    public Restaurante(int id, int idDono, String tipoEmpresa, String nome, String endereco, String tipoCozinha) {
+        super(id, idDono, tipoEmpresa, nome, endereco);
+        this.tipoCozinha = tipoCozinha;
+    }
+
     /**
      * Método getter para obter o tipo de cozinha.
      * @return Tipo de cozinha do restaurante.
@@ -50,6 +65,11 @@ public class Restaurante extends Empresa {
     @Override
     public boolean isFarmacia(){return false;}
 
+    @Override
+    public Empresa copiar() {
+        return copiarEntregadores(new Restaurante(getId(), getIdDono(), getTipoEmpresa(), getNome(), getEndereco(), tipoCozinha));
+    }
+
     /**
      * Método para ajustar um atributo do restaurante. Este método pode ser sobrescrito ou
      * estendido posteriormente para permitir ajustes dinâmicos.
@@ -37,6 +37,24 @@ public abstract class Usuario implements Serializable {
         this.endereco = endereco;
     }
 
+    /**
+     * Construtor usado ao reconstruir um usuário já persistido.
+     * Mantém o ID gravado e não altera o contador de IDs.
+     *
+     * @param id        ID do usuário.
+     * @param nome      Nome do usuário.
+     * @param email     Email do usuário.
+     * @param senha     Senha do usuário.
+     * @param endereco  Endereço do usuário.
+     */
+    protected Usuario(int id, String nome, String email, String senha, String endereco) {
+        this.id = id;
+        this.nome = nome;
+        this.email = email;
+        this.senha = senha;
+        this.endereco = endereco;
+    }
+
     // Métodos getters para acessar os atributos do usuário
 
     /**
@@ -83,6 +101,25 @@ public abstract class Usuario implements Serializable {
      */
     public String getEndereco() { return endereco; }
 
+    /**
+     * Retorna o próximo ID que será atribuído a um usuário.
+     *
+     * @return Valor atual do contador de IDs.
+     */
+    public static int getContadorId() {
+        return contadorId;
+    }
+
+    /**
+     * Restaura o contador de IDs, usado ao carregar dados persistidos
+     * para que novos usuários não repitam IDs já existentes.
+     *
+     * @param contadorId Próximo ID a ser atribuído.
+     */
+    public static void setContadorId(int contadorId) {
+        Usuario.contadorId = contadorId;
+    }
+
     /**
      * Retorna o valor do atributo solicitado, se ele existir.
      *
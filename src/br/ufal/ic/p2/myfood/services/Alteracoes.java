@@ -0,0 +1,62 @@
+package br.ufal.ic.p2.myfood.services;
+
+import java.util.*;
+
+/**
+ * Registra quais entradas de cada coleção do sistema mudaram desde o último checkpoint,
+ * para que o checkpoint grave só um delta com essas entradas em vez do snapshot inteiro.
+ * Operações que apagam dados (zerarSistema) marcam tudo, forçando um snapshot completo.
+ */
+public class Alteracoes {
+
+    public enum Colecao {
+        USUARIOS,
+        EMPRESAS,
+        PRODUTOS,
+        PEDIDOS,
+        ENTREGAS
+    }
+
+    private final Map<Colecao, Set<Integer>> alterados = new EnumMap<>(Colecao.class);
+    private boolean tudo;
+
+    public void marcar(Colecao colecao, int id) {
+        alterados.computeIfAbsent(colecao, c -> new HashSet<>()).add(id);
+    }
+
+    public void marcarTudo() {
+        tudo = true;
+    }
+
+    public boolean isTudo() {
+        return tudo;
+    }
+
+    public boolean isVazio() {
+        return !tudo && alterados.isEmpty();
+    }
+
+    // IDs alterados na coleção; vazio se nada mudou
+    public Set<Integer> get(Colecao colecao) {
+        return alterados.getOrDefault(colecao, Collections.emptySet());
+    }
+
+    // Devolve marcações de um checkpoint que falhou, para que entrem no próximo
+    public void incorporar(Alteracoes outras) {
+        for (Map.Entry<Colecao, Set<Integer>> entrada : outras.alterados.entrySet()) {
+            alterados.computeIfAbsent(entrada.getKey(), c -> new HashSet<>()).addAll(entrada.getValue());
+        }
+        tudo |= outras.tudo;
+    }
+
+    public Alteracoes copiar() {
+        Alteracoes copia = new Alteracoes();
+        copia.incorporar(this);
+        return copia;
+    }
+
+    public void limpar() {
+        alterados.clear();
+        tudo = false;
+    }
+}
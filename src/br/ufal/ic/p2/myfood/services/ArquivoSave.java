@@ -0,0 +1,245 @@
+package br.ufal.ic.p2.myfood.services;
+
+import br.ufal.ic.p2.myfood.models.Entrega;
+import br.ufal.ic.p2.myfood.models.Pedido;
+import br.ufal.ic.p2.myfood.models.Produto;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Arquivo frio dos pedidos entregues e suas entregas.
+ * Cada lote arquivado vira um segmento imutável (arquivo/segmento.N, em ordem de criação,
+ * codificado por {@link SnapshotCodec#codificarSegmento}). Em memória fica só o índice
+ * ID → segmento, montado na inicialização a partir do cabeçalho de cada segmento; os dados
+ * de um pedido arquivado são lidos do disco quando consultados.
+ */
+public class ArquivoSave {
+
+    private static final Path DIRETORIO = Paths.get("arquivo");
+    private static final String PREFIXO = "segmento.";
+    private static final Path TEMP_PATH = DIRETORIO.resolve("segmento.tmp");
+
+    private final Map<Integer, Integer> segmentoPorPedido = new HashMap<>();
+    private final Map<Integer, Integer> empresaPorPedido = new HashMap<>();
+    private final Map<Integer, Integer> clientePorPedido = new HashMap<>();
+    private final Map<Integer, Integer> segmentoPorEntrega = new HashMap<>();
+    private final Map<Integer, Integer> pedidoPorEntrega = new HashMap<>();
+    private final Map<Integer, Integer> entregaPorPedido = new HashMap<>();
+    private int ultimoSegmento;
+    // Maior ID de entrega já arquivado, mesmo que depois esquecido: IDs não são reaproveitados
+    private int maiorEntrega;
+    // Segmentos descartados por zerarSistema, apagados depois do próximo snapshot completo
+    private int ultimoDescartado;
+
+    // Recebe cada pedido arquivado em paraCadaPedido
+    public interface VisitantePedido {
+        void visitar(int idCliente, int idEmpresa, int numero);
+    }
+
+    private ArquivoSave() {
+    }
+
+    /**
+     * Abre o arquivo lendo o índice de cada segmento. Um segmento gravado mais tarde
+     * prevalece sobre um anterior que tenha os mesmos IDs.
+     */
+    public static ArquivoSave abrir() throws IOException {
+        ArquivoSave arquivo = new ArquivoSave();
+        for (int numero : listarSegmentos()) {
+            SnapshotCodec.IndiceSegmento indice;
+            try (InputStream entrada = new BufferedInputStream(Files.newInputStream(caminho(numero)))) {
+                indice = SnapshotCodec.lerIndiceSegmento(entrada);
+            }
+            arquivo.indexar(numero, indice);
+            arquivo.ultimoSegmento = numero;
+        }
+        return arquivo;
+    }
+
+    /**
+     * Grava um novo segmento com os pedidos e entregas informados e os inclui no índice.
+     * A escrita acontece fora do bloqueio do índice, para não atrasar as consultas; só um
+     * arquivamento roda por vez (é chamado pelo checkpoint).
+     *
+     * @return Número de bytes escritos.
+     */
+    public int arquivar(Map<Integer, Pedido> pedidos, Map<Integer, Entrega> entregas) throws IOException {
+        byte[] dados = SnapshotCodec.codificarSegmento(pedidos, entregas);
+        int numero;
+        synchronized (this) {
+            numero = ultimoSegmento + 1;
+        }
+        Files.createDirectories(DIRETORIO);
+        try (FileOutputStream fos = new FileOutputStream(TEMP_PATH.toFile())) {
+            fos.write(dados);
+            fos.getFD().sync();
+        }
+        Files.move(TEMP_PATH, caminho(numero), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        SnapshotCodec.IndiceSegmento indice;
+        try (InputStream entrada = new ByteArrayInputStream(dados)) {
+            indice = SnapshotCodec.lerIndiceSegmento(entrada);
+        }
+        synchronized (this) {
+            ultimoSegmento = numero;
+            indexar(numero, indice);
+        }
+        return dados.length;
+    }
+
+    // Retorna null se o pedido não estiver arquivado
+    public synchronized Pedido buscarPedido(int numero, Map<Integer, Produto> produtos) throws IOException {
+        Integer segmento = segmentoPorPedido.get(numero);
+        return segmento == null ? null : ler(segmento, produtos).getPedidos().get(numero);
+    }
+
+    // Retorna null se a entrega não estiver arquivada; os produtos resolvem os pedidos do mesmo segmento
+    public synchronized Entrega buscarEntrega(int id, Map<Integer, Produto> produtos) throws IOException {
+        Integer segmento = segmentoPorEntrega.get(id);
+        return segmento == null ? null : ler(segmento, produtos).getEntregas().get(id);
+    }
+
+    public synchronized boolean contemEntrega(int id) {
+        return segmentoPorEntrega.containsKey(id);
+    }
+
+    // ID da entrega arquivada de um pedido, ou null
+    public synchronized Integer buscarEntregaDoPedido(int numeroPedido) {
+        return entregaPorPedido.get(numeroPedido);
+    }
+
+    // Visita o cliente, a empresa e o número de cada pedido arquivado, em ordem qualquer
+    public synchronized void paraCadaPedido(VisitantePedido visitante) {
+        for (Map.Entry<Integer, Integer> entrada : empresaPorPedido.entrySet()) {
+            int numero = entrada.getKey();
+            visitante.visitar(clientePorPedido.get(numero), entrada.getValue(), numero);
+        }
+    }
+
+    public synchronized int getQuantidadePedidos() {
+        return segmentoPorPedido.size();
+    }
+
+    public synchronized int getQuantidadeEntregas() {
+        return segmentoPorEntrega.size();
+    }
+
+    public synchronized int getMaiorEntrega() {
+        return maiorEntrega;
+    }
+
+    /**
+     * Tira do índice pedidos e entregas que também estão em memória: a cópia em memória prevalece.
+     * Acontece quando o sistema cai depois de gravar um segmento e antes do snapshot seguinte.
+     */
+    public synchronized void ignorarAtivos(Set<Integer> pedidosAtivos, Set<Integer> entregasAtivas) {
+        if (segmentoPorPedido.isEmpty() && segmentoPorEntrega.isEmpty()) {
+            return;
+        }
+        for (int numero : pedidosAtivos) {
+            esquecerPedido(numero);
+        }
+        for (int id : entregasAtivas) {
+            if (segmentoPorEntrega.remove(id) != null) {
+                entregaPorPedido.remove(pedidoPorEntrega.remove(id));
+            }
+        }
+    }
+
+    // Tira um pedido do índice: a cópia em memória voltou a ser a válida
+    public synchronized void esquecer(int numero) {
+        esquecerPedido(numero);
+        Integer entrega = entregaPorPedido.remove(numero);
+        if (entrega != null) {
+            segmentoPorEntrega.remove(entrega);
+            pedidoPorEntrega.remove(entrega);
+        }
+    }
+
+    // Usado por zerarSistema: esvazia o índice e marca os segmentos atuais para remoção
+    public synchronized void descartarTudo() {
+        segmentoPorPedido.clear();
+        empresaPorPedido.clear();
+        clientePorPedido.clear();
+        segmentoPorEntrega.clear();
+        pedidoPorEntrega.clear();
+        entregaPorPedido.clear();
+        maiorEntrega = 0;
+        ultimoDescartado = ultimoSegmento;
+    }
+
+    // Apaga os segmentos descartados; só deve ser chamado depois de um snapshot completo
+    public synchronized void apagarDescartados() throws IOException {
+        if (ultimoDescartado == 0) {
+            return;
+        }
+        for (int numero : listarSegmentos()) {
+            if (numero <= ultimoDescartado) {
+                Files.deleteIfExists(caminho(numero));
+            }
+        }
+        ultimoDescartado = 0;
+    }
+
+    private void indexar(int numero, SnapshotCodec.IndiceSegmento indice) {
+        int[] pedidos = indice.getPedidos();
+        for (int i = 0; i < pedidos.length; i++) {
+            segmentoPorPedido.put(pedidos[i], numero);
+            empresaPorPedido.put(pedidos[i], indice.getEmpresasDosPedidos()[i]);
+            clientePorPedido.put(pedidos[i], indice.getClientesDosPedidos()[i]);
+        }
+        int[] entregas = indice.getEntregas();
+        for (int i = 0; i < entregas.length; i++) {
+            segmentoPorEntrega.put(entregas[i], numero);
+            pedidoPorEntrega.put(entregas[i], indice.getPedidosDasEntregas()[i]);
+            entregaPorPedido.put(indice.getPedidosDasEntregas()[i], entregas[i]);
+            maiorEntrega = Math.max(maiorEntrega, entregas[i]);
+        }
+    }
+
+    private void esquecerPedido(int numero) {
+        if (segmentoPorPedido.remove(numero) != null) {
+            empresaPorPedido.remove(numero);
+            clientePorPedido.remove(numero);
+        }
+    }
+
+    private Snapshot ler(int segmento, Map<Integer, Produto> produtos) throws IOException {
+        try (InputStream entrada = new BufferedInputStream(Files.newInputStream(caminho(segmento)))) {
+            return SnapshotCodec.decodificarSegmento(entrada, produtos);
+        }
+    }
+
+    private static Path caminho(int numero) {
+        return DIRETORIO.resolve(PREFIXO + numero);
+    }
+
+    // Números dos segmentos existentes, em ordem de criação
+    private static List<Integer> listarSegmentos() throws IOException {
+        List<Integer> numeros = new ArrayList<>();
+        if (!Files.isDirectory(DIRETORIO)) {
+            return numeros;
+        }
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(DIRETORIO, PREFIXO + "*")) {
+            for (Path arquivo : arquivos) {
+                try {
+                    numeros.add(Integer.parseInt(arquivo.getFileName().toString().substring(PREFIXO.length())));
+                } catch (NumberFormatException e) {
+                    // Arquivo temporário ou de outra origem: ignorado
+                }
+            }
+        }
+        Collections.sort(numeros);
+        return numeros;
+    }
+}
@@ -0,0 +1,241 @@
+package br.ufal.ic.p2.myfood.services;
+
+import br.ufal.ic.p2.myfood.models.Produto;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Índice invertido dos produtos de todas as empresas, pelas palavras do nome e da categoria.
+ * As palavras são normalizadas (minúsculas, sem acentos) e guardadas em ordem, para que cada
+ * termo da busca funcione como prefixo. Os produtos de cada palavra ficam em ordem de valor,
+ * para que a busca encontre primeiro os mais baratos e pare assim que nenhum candidato restante
+ * puder entrar no resultado. É um índice derivado, montado na carga a partir dos produtos.
+ */
+public class BuscaProdutos {
+
+    private static final Pattern SEPARADOR = Pattern.compile("[^\\p{Alnum}]+");
+    private static final Pattern ACENTOS = Pattern.compile("\\p{M}+");
+
+    // Pontos de um termo, conforme onde e como ele aparece no produto
+    private static final int NOME_EXATO = 4;
+    private static final int NOME_PREFIXO = 3;
+    private static final int CATEGORIA_EXATA = 2;
+    private static final int CATEGORIA_PREFIXO = 1;
+
+    // Palavra → produtos que a têm no nome ou na categoria, em ordem de valor
+    private final NavigableMap<String, TreeSet<Palavras>> produtosPorPalavra = new TreeMap<>();
+    // Palavras indexadas de cada produto, para atualizar o índice quando ele é editado
+    private final Map<Produto, Palavras> palavrasPorProduto = new HashMap<>();
+
+    // Produto como foi indexado; o valor é guardado porque ordena as listas de cada palavra
+    private static class Palavras {
+        private final Produto produto;
+        private final float valor;
+        private final String[] nome;
+        private final String[] categoria;
+
+        private Palavras(Produto produto) {
+            this.produto = produto;
+            this.valor = produto.getValor();
+            this.nome = separar(produto.getNome());
+            this.categoria = separar(produto.getCategoria());
+        }
+    }
+
+    // Ordem das listas de cada palavra: menor valor primeiro, depois produto mais antigo
+    private static final Comparator<Palavras> POR_VALOR = Comparator
+            .comparingDouble((Palavras p) -> p.valor)
+            .thenComparingInt(p -> p.produto.getId());
+
+    // Posição em uma das listas percorridas pela busca
+    private static class Cursor {
+        private final Iterator<Palavras> restantes;
+        private Palavras atual;
+
+        private Cursor(Iterator<Palavras> restantes) {
+            this.restantes = restantes;
+            this.atual = restantes.next();
+        }
+
+        private boolean avancar() {
+            atual = restantes.hasNext() ? restantes.next() : null;
+            return atual != null;
+        }
+    }
+
+    // Resultado da busca, com a pontuação usada na ordenação
+    private static class Resultado {
+        private final Palavras palavras;
+        private final int pontos;
+
+        private Resultado(Palavras palavras, int pontos) {
+            this.palavras = palavras;
+            this.pontos = pontos;
+        }
+    }
+
+    // Melhor primeiro: mais pontos, depois menor valor, depois produto mais antigo
+    private static final Comparator<Resultado> ORDEM = Comparator
+            .comparingInt((Resultado r) -> -r.pontos)
+            .thenComparing(r -> r.palavras, POR_VALOR);
+
+    public void adicionar(Produto produto) {
+        Palavras palavras = new Palavras(produto);
+        palavrasPorProduto.put(produto, palavras);
+        for (String palavra : palavras.nome) {
+            produtosPorPalavra.computeIfAbsent(palavra, p -> new TreeSet<>(POR_VALOR)).add(palavras);
+        }
+        for (String palavra : palavras.categoria) {
+            produtosPorPalavra.computeIfAbsent(palavra, p -> new TreeSet<>(POR_VALOR)).add(palavras);
+        }
+    }
+
+    // Reindexa um produto depois que o nome, a categoria ou o valor mudaram
+    public void atualizar(Produto produto) {
+        Palavras anteriores = palavrasPorProduto.remove(produto);
+        if (anteriores != null) {
+            remover(anteriores, anteriores.nome);
+            remover(anteriores, anteriores.categoria);
+        }
+        adicionar(produto);
+    }
+
+    public void limpar() {
+        produtosPorPalavra.clear();
+        palavrasPorProduto.clear();
+    }
+
+    /**
+     * Busca os produtos que têm, para cada termo da consulta, uma palavra começando por ele no
+     * nome ou na categoria. Os candidatos vêm só do termo mais seletivo, percorridos em ordem de
+     * valor; os demais termos são conferidos nas palavras de cada candidato. A busca para quando
+     * o resultado está completo e seu pior item já tem a maior pontuação possível, pois os
+     * candidatos restantes não são mais baratos.
+     *
+     * @param consulta   Termos separados por espaço ou pontuação.
+     * @param quantidade Número máximo de resultados.
+     * @return Os melhores produtos: mais pontos (termo inteiro vale mais que prefixo, nome mais
+     * que categoria), depois menor valor.
+     */
+    public List<Produto> buscar(String consulta, int quantidade) {
+        String[] termos = separar(consulta);
+        if (termos.length == 0 || quantidade <= 0) {
+            return Collections.emptyList();
+        }
+
+        Collection<TreeSet<Palavras>> candidatos = null;
+        long menorTotal = Long.MAX_VALUE;
+        int maximo = 0;
+        for (String termo : termos) {
+            Collection<TreeSet<Palavras>> listas = comPrefixo(termo).values();
+            long total = 0;
+            for (TreeSet<Palavras> lista : listas) {
+                total += lista.size();
+            }
+            if (total < menorTotal) {
+                menorTotal = total;
+                candidatos = listas;
+            }
+            // Limite superior: sem a palavra inteira no índice, o termo vale no máximo um prefixo no nome
+            maximo += produtosPorPalavra.containsKey(termo) ? NOME_EXATO : NOME_PREFIXO;
+        }
+
+        // Junta as listas do termo escolhido em ordem de valor
+        PriorityQueue<Cursor> cursores = new PriorityQueue<>(Math.max(1, candidatos.size()),
+                Comparator.comparing((Cursor c) -> c.atual, POR_VALOR));
+        for (TreeSet<Palavras> lista : candidatos) {
+            cursores.add(new Cursor(lista.iterator()));
+        }
+        Set<Palavras> vistos = candidatos.size() > 1 ? new HashSet<>() : null;
+
+        // Heap com o pior resultado no topo, limitado à quantidade pedida
+        PriorityQueue<Resultado> melhores = new PriorityQueue<>(quantidade + 1, ORDEM.reversed());
+        while (!cursores.isEmpty()) {
+            Cursor cursor = cursores.poll();
+            Palavras palavras = cursor.atual;
+            if (cursor.avancar()) {
+                cursores.add(cursor);
+            }
+            if (vistos != null && !vistos.add(palavras)) {
+                continue;
+            }
+            int pontos = pontuar(palavras, termos);
+            if (pontos == 0) {
+                continue;
+            }
+            melhores.add(new Resultado(palavras, pontos));
+            if (melhores.size() > quantidade) {
+                melhores.poll();
+            }
+            if (melhores.size() == quantidade && melhores.peek().pontos >= maximo) {
+                break;
+            }
+        }
+
+        List<Resultado> ordenados = new ArrayList<>(melhores);
+        ordenados.sort(ORDEM);
+        List<Produto> produtos = new ArrayList<>(ordenados.size());
+        for (Resultado resultado : ordenados) {
+            produtos.add(resultado.palavras.produto);
+        }
+        return produtos;
+    }
+
+    private SortedMap<String, TreeSet<Palavras>> comPrefixo(String prefixo) {
+        return produtosPorPalavra.subMap(prefixo, true, prefixo + Character.MAX_VALUE, false);
+    }
+
+    // Soma dos pontos de cada termo; 0 se algum termo não aparecer no produto
+    private static int pontuar(Palavras palavras, String[] termos) {
+        int total = 0;
+        for (String termo : termos) {
+            int pontos = Math.max(pontuar(palavras.nome, termo, NOME_EXATO, NOME_PREFIXO),
+                    pontuar(palavras.categoria, termo, CATEGORIA_EXATA, CATEGORIA_PREFIXO));
+            if (pontos == 0) {
+                return 0;
+            }
+            total += pontos;
+        }
+        return total;
+    }
+
+    private static int pontuar(String[] palavras, String termo, int exato, int prefixo) {
+        int pontos = 0;
+        for (String palavra : palavras) {
+            if (palavra.equals(termo)) {
+                return exato;
+            }
+            if (palavra.startsWith(termo)) {
+                pontos = prefixo;
+            }
+        }
+        return pontos;
+    }
+
+    private void remover(Palavras indexado, String[] palavras) {
+        for (String palavra : palavras) {
+            TreeSet<Palavras> produtos = produtosPorPalavra.get(palavra);
+            if (produtos != null && produtos.remove(indexado) && produtos.isEmpty()) {
+                produtosPorPalavra.remove(palavra);
+            }
+        }
+    }
+
+    // Palavras distintas do texto, em minúsculas e sem acentos
+    static String[] separar(String texto) {
+        if (texto == null) {
+            return new String[0];
+        }
+        String normalizado = ACENTOS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        Set<String> palavras = new LinkedHashSet<>();
+        for (String palavra : SEPARADOR.split(normalizado)) {
+            if (!palavra.isEmpty()) {
+                palavras.add(palavra);
+            }
+        }
+        return palavras.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,124 @@
+package br.ufal.ic.p2.myfood.services;
+
+import br.ufal.ic.p2.myfood.models.Produto;
+
+import java.util.*;
+
+/**
+ * Produtos de cada empresa em ordem de valor, no cardápio inteiro e por categoria, para
+ * consultas como "categoria X até R$ Y" e "os N mais baratos" sem percorrer o cardápio.
+ * editarProduto reposiciona o produto quando o valor ou a categoria mudam. É um índice
+ * derivado, montado na carga a partir dos produtos, como o {@link BuscaProdutos}.
+ */
+public class CardapioPrecos {
+
+    private final Map<Integer, TreeSet<Item>> porEmpresa = new HashMap<>();
+    private final Map<Integer, Map<String, TreeSet<Item>>> porEmpresaCategoria = new HashMap<>();
+    // Posição atual de cada produto, pelo ID, para tirá-lo do lugar antigo quando ele é editado
+    private final Map<Integer, Item> itens = new HashMap<>();
+
+    // Produto como foi indexado; valor e categoria são guardados porque definem sua posição
+    private static class Item {
+        private final Produto produto;
+        private final int id;
+        private final float valor;
+        private final String categoria;
+
+        private Item(Produto produto) {
+            this(produto, produto.getId(), produto.getValor(), produto.getCategoria());
+        }
+
+        private Item(Produto produto, int id, float valor, String categoria) {
+            this.produto = produto;
+            this.id = id;
+            this.valor = valor;
+            this.categoria = categoria;
+        }
+    }
+
+    // Menor valor primeiro; no mesmo valor, o produto mais antigo
+    private static final Comparator<Item> POR_VALOR = Comparator
+            .comparingDouble((Item item) -> item.valor)
+            .thenComparingInt(item -> item.id);
+
+    public void adicionar(Produto produto) {
+        Item item = new Item(produto);
+        itens.put(item.id, item);
+        porEmpresa.computeIfAbsent(produto.getIdEmpresa(), id -> new TreeSet<>(POR_VALOR)).add(item);
+        porEmpresaCategoria.computeIfAbsent(produto.getIdEmpresa(), id -> new HashMap<>())
+                .computeIfAbsent(item.categoria, c -> new TreeSet<>(POR_VALOR)).add(item);
+    }
+
+    // Reposiciona um produto depois que o valor ou a categoria mudaram
+    public void atualizar(Produto produto) {
+        Item anterior = itens.get(produto.getId());
+        if (anterior != null) {
+            if (anterior.valor == produto.getValor() && anterior.categoria.equals(produto.getCategoria())) {
+                return;
+            }
+            remover(produto.getIdEmpresa(), anterior);
+        }
+        adicionar(produto);
+    }
+
+    public void limpar() {
+        porEmpresa.clear();
+        porEmpresaCategoria.clear();
+        itens.clear();
+    }
+
+    /**
+     * Produtos da empresa na categoria com valor até o máximo informado, do mais barato ao mais caro.
+     */
+    public List<Produto> ateValor(int idEmpresa, String categoria, float valorMaximo) {
+        TreeSet<Item> daCategoria = getCategoria(idEmpresa, categoria);
+        if (daCategoria == null) {
+            return Collections.emptyList();
+        }
+        Item limite = new Item(null, Integer.MAX_VALUE, valorMaximo, categoria);
+        return produtos(daCategoria.headSet(limite, true), Integer.MAX_VALUE);
+    }
+
+    // Os produtos mais baratos da empresa, de todas as categorias, em ordem de valor
+    public List<Produto> maisBaratos(int idEmpresa, int quantidade) {
+        TreeSet<Item> cardapio = porEmpresa.get(idEmpresa);
+        if (cardapio == null) {
+            return Collections.emptyList();
+        }
+        return produtos(cardapio, quantidade);
+    }
+
+    private TreeSet<Item> getCategoria(int idEmpresa, String categoria) {
+        Map<String, TreeSet<Item>> daEmpresa = porEmpresaCategoria.get(idEmpresa);
+        return daEmpresa == null ? null : daEmpresa.get(categoria);
+    }
+
+    private void remover(int idEmpresa, Item item) {
+        itens.remove(item.id);
+        TreeSet<Item> daEmpresa = porEmpresa.get(idEmpresa);
+        if (daEmpresa != null && daEmpresa.remove(item) && daEmpresa.isEmpty()) {
+            porEmpresa.remove(idEmpresa);
+        }
+        Map<String, TreeSet<Item>> categorias = porEmpresaCategoria.get(idEmpresa);
+        if (categorias != null) {
+            TreeSet<Item> daCategoria = categorias.get(item.categoria);
+            if (daCategoria != null && daCategoria.remove(item) && daCategoria.isEmpty()) {
+                categorias.remove(item.categoria);
+                if (categorias.isEmpty()) {
+                    porEmpresaCategoria.remove(idEmpresa);
+                }
+            }
+        }
+    }
+
+    private static List<Produto> produtos(Collection<Item> grupo, int quantidade) {
+        List<Produto> produtos = new ArrayList<>();
+        for (Item item : grupo) {
+            if (produtos.size() == quantidade) {
+                break;
+            }
+            produtos.add(item.produto);
+        }
+        return produtos;
+    }
+}
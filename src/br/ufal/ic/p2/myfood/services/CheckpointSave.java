@@ -0,0 +1,146 @@
+package br.ufal.ic.p2.myfood.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Agenda checkpoints do sistema em uma thread de fundo: a cada "myfood.checkpoint.intervalo"
+ * milissegundos (padrão 60000) ou depois de "myfood.checkpoint.mutacoes" operações (padrão 1000).
+ * Zero desativa o respectivo gatilho. Só um checkpoint roda por vez, inclusive os explícitos
+ * de encerrarSistema.
+ *
+ * A tarefa captura o estado em uma pausa curta e grava fora dela; o tempo da pausa, a duração
+ * total e os bytes escritos do último checkpoint ficam disponíveis para consulta, assim como a
+ * falha do último checkpoint de fundo, até que outro seja gravado com sucesso.
+ */
+public class CheckpointSave implements Closeable {
+
+    /**
+     * Checkpoint executado pelo agendador.
+     */
+    public interface Tarefa {
+        /**
+         * @return Resultado do checkpoint, ou null se não havia nada para gravar.
+         */
+        Resultado executar() throws IOException;
+    }
+
+    // Bytes gravados e tempo em que as alterações ficaram bloqueadas durante a captura
+    public static class Resultado {
+        private final long bytes;
+        private final long pausaNanos;
+
+        public Resultado(long bytes, long pausaNanos) {
+            this.bytes = bytes;
+            this.pausaNanos = pausaNanos;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getPausaNanos() {
+            return pausaNanos;
+        }
+    }
+
+    private final Tarefa tarefa;
+    private final int maxMutacoes;
+    private final AtomicInteger mutacoes = new AtomicInteger();
+    private final ScheduledExecutorService agendador;
+
+    private volatile Instant ultimoInstante;
+    private volatile long ultimaDuracaoNanos;
+    private volatile long ultimaPausaNanos;
+    private volatile long ultimosBytes;
+    private volatile IOException ultimaFalha;
+
+    private CheckpointSave(Tarefa tarefa, long intervaloMs, int maxMutacoes) {
+        this.tarefa = tarefa;
+        this.maxMutacoes = maxMutacoes;
+        this.agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (intervaloMs > 0) {
+            agendador.scheduleWithFixedDelay(this::executarSilenciosamente, intervaloMs, intervaloMs,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static CheckpointSave iniciar(Tarefa tarefa) {
+        long intervaloMs = Long.getLong("myfood.checkpoint.intervalo", 60_000);
+        int maxMutacoes = Integer.getInteger("myfood.checkpoint.mutacoes", 1000);
+        return new CheckpointSave(tarefa, intervaloMs, maxMutacoes);
+    }
+
+    /**
+     * Conta uma operação; ao atingir o limite, agenda um checkpoint imediato na thread de fundo.
+     */
+    public void mutacao() {
+        if (maxMutacoes > 0 && mutacoes.incrementAndGet() == maxMutacoes && !agendador.isShutdown()) {
+            agendador.execute(this::executarSilenciosamente);
+        }
+    }
+
+    /**
+     * Executa um checkpoint na thread atual, esperando um que esteja em andamento.
+     */
+    public synchronized void executar() throws IOException {
+        mutacoes.set(0);
+        long inicio = System.nanoTime();
+        Resultado resultado = tarefa.executar();
+        if (resultado == null) {
+            return;
+        }
+        ultimaDuracaoNanos = System.nanoTime() - inicio;
+        ultimaPausaNanos = resultado.getPausaNanos();
+        ultimosBytes = resultado.getBytes();
+        ultimoInstante = Instant.now();
+        ultimaFalha = null;
+    }
+
+    private void executarSilenciosamente() {
+        try {
+            executar();
+        } catch (IOException | RuntimeException e) {
+            // Fica registrada em getUltimaFalha(); as alterações entram no próximo checkpoint
+            ultimaFalha = e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+    }
+
+    public Instant getUltimoInstante() {
+        return ultimoInstante;
+    }
+
+    public long getUltimaDuracaoNanos() {
+        return ultimaDuracaoNanos;
+    }
+
+    public long getUltimaPausaNanos() {
+        return ultimaPausaNanos;
+    }
+
+    public long getUltimosBytes() {
+        return ultimosBytes;
+    }
+
+    public IOException getUltimaFalha() {
+        return ultimaFalha;
+    }
+
+    /**
+     * Encerra o agendador: nenhum checkpoint de fundo começa depois disso, e o que estiver em
+     * andamento termina antes do próximo {@link #executar()}.
+     */
+    @Override
+    public void close() {
+        agendador.shutdown();
+    }
+}
@@ -0,0 +1,21 @@
+package br.ufal.ic.p2.myfood.services;
+
+import br.ufal.ic.p2.myfood.models.Empresa;
+import br.ufal.ic.p2.myfood.models.Pedido;
+import br.ufal.ic.p2.myfood.models.Usuario;
+
+/**
+ * Acesso de leitura às entidades mantidas em memória pelo sistema, usado pelos modelos
+ * que só guardam IDs (como Entrega e Pedido) para resolver os dados relacionados sem ir ao disco.
+ */
+public interface ConsultaEntidades {
+
+    // Retorna null se o pedido não existir
+    Pedido buscarPedido(int numero);
+
+    // Retorna null se o usuário não existir
+    Usuario buscarUsuario(int id);
+
+    // Retorna null se a empresa não existir
+    Empresa buscarEmpresa(int id);
+}
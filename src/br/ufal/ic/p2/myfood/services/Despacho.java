@@ -0,0 +1,44 @@
+package br.ufal.ic.p2.myfood.services;
+
+import br.ufal.ic.p2.myfood.models.Empresa;
+
+import java.util.*;
+
+/**
+ * Escolha do próximo pedido a entregar. As filas de pedidos prontos de cada empresa são os
+ * grupos "pronto" de {@link EstadosPedidos}, em ordem de número (o mais antigo primeiro):
+ * liberarPedido coloca o pedido na fila e criarEntrega o retira. Para escolher o próximo
+ * pedido de um entregador basta comparar o início da fila de cada empresa em que ele trabalha.
+ */
+public class Despacho {
+
+    private final EstadosPedidos estados;
+
+    public Despacho(EstadosPedidos estados) {
+        this.estados = estados;
+    }
+
+    /**
+     * Próximo pedido a entregar entre as empresas informadas: o mais antigo das farmácias
+     * ou, se nenhuma tiver pedido pronto, o mais antigo das demais.
+     *
+     * @return Número do pedido, ou null se nenhuma das empresas tiver pedido pronto.
+     */
+    public Integer proximo(Collection<Empresa> empresas) {
+        Integer farmacia = null;
+        Integer outro = null;
+        for (Empresa empresa : empresas) {
+            SortedSet<Integer> fila = estados.get(empresa.getId(), "pronto");
+            if (fila.isEmpty()) {
+                continue;
+            }
+            int primeiro = fila.first();
+            if (empresa.isFarmacia()) {
+                farmacia = farmacia == null ? primeiro : Math.min(farmacia, primeiro);
+            } else {
+                outro = outro == null ? primeiro : Math.min(outro, primeiro);
+            }
+        }
+        return farmacia != null ? farmacia : outro;
+    }
+}
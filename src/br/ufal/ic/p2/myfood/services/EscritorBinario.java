@@ -0,0 +1,94 @@
+package br.ufal.ic.p2.myfood.services;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Escreve valores primitivos em formato binário compacto.
+ * Inteiros usam varint (7 bits por byte) e strings passam por uma tabela:
+ * a primeira ocorrência é gravada por extenso e as seguintes viram um índice.
+ *
+ * Código das strings: 0 = null, 1 = literal novo, n >= 2 = entrada n - 2 da tabela.
+ */
+public class EscritorBinario {
+
+    private final ByteArrayOutputStream saida = new ByteArrayOutputStream();
+    private final Map<String, Integer> tabelaStrings = new HashMap<>();
+
+    public void escreverByte(int valor) {
+        saida.write(valor);
+    }
+
+    // Inteiro não negativo (IDs, tamanhos) em varint
+    public void escreverVarint(int valor) {
+        while ((valor & ~0x7F) != 0) {
+            saida.write((valor & 0x7F) | 0x80);
+            valor >>>= 7;
+        }
+        saida.write(valor);
+    }
+
+    public void escreverVarlong(long valor) {
+        while ((valor & ~0x7FL) != 0) {
+            saida.write((int) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+        saida.write((int) valor);
+    }
+
+    // Inteiro com sinal em zigzag, para que valores negativos pequenos continuem curtos
+    public void escreverInt(int valor) {
+        escreverVarint((valor << 1) ^ (valor >> 31));
+    }
+
+    public void escreverFloat(float valor) {
+        int bits = Float.floatToIntBits(valor);
+        saida.write(bits >>> 24);
+        saida.write(bits >>> 16);
+        saida.write(bits >>> 8);
+        saida.write(bits);
+    }
+
+    // Inteiro de 4 bytes (big-endian), usado nos checksums
+    public void escreverFixo32(int valor) {
+        saida.write(valor >>> 24);
+        saida.write(valor >>> 16);
+        saida.write(valor >>> 8);
+        saida.write(valor);
+    }
+
+    public void escreverBoolean(boolean valor) {
+        saida.write(valor ? 1 : 0);
+    }
+
+    public void escreverString(String valor) {
+        if (valor == null) {
+            escreverVarint(0);
+            return;
+        }
+        Integer indice = tabelaStrings.get(valor);
+        if (indice != null) {
+            escreverVarint(indice + 2);
+            return;
+        }
+        tabelaStrings.put(valor, tabelaStrings.size());
+        byte[] bytes = valor.getBytes(StandardCharsets.UTF_8);
+        escreverVarint(1);
+        escreverVarint(bytes.length);
+        saida.write(bytes, 0, bytes.length);
+    }
+
+    public void escreverBytes(byte[] bytes) {
+        saida.write(bytes, 0, bytes.length);
+    }
+
+    public int tamanho() {
+        return saida.size();
+    }
+
+    public byte[] toByteArray() {
+        return saida.toByteArray();
+    }
+}
@@ -0,0 +1,75 @@
+package br.ufal.ic.p2.myfood.services;
+
+import java.util.*;
+
+/**
+ * Números dos pedidos agrupados por estado, no total e por empresa, em ordem de número.
+ * Cada mudança de estado move o pedido de um grupo para outro, para que contagens e listagens
+ * por estado não precisem percorrer todos os pedidos. Pedidos arquivados continuam no grupo
+ * "entregue". É um índice derivado, montado na carga como o {@link HistoricoPedidos}.
+ */
+public class EstadosPedidos {
+
+    public static final List<String> ESTADOS = List.of("aberto", "preparando", "pronto", "entregando", "entregue");
+
+    private final Map<String, TreeSet<Integer>> porEstado = new HashMap<>();
+    private final Map<Integer, Map<String, TreeSet<Integer>>> porEmpresaEstado = new HashMap<>();
+
+    public static boolean ehEstado(String estado) {
+        return ESTADOS.contains(estado);
+    }
+
+    public void adicionar(int idEmpresa, int numero, String estado) {
+        porEstado.computeIfAbsent(estado, e -> new TreeSet<>()).add(numero);
+        porEmpresaEstado.computeIfAbsent(idEmpresa, id -> new HashMap<>())
+                .computeIfAbsent(estado, e -> new TreeSet<>()).add(numero);
+    }
+
+    // Move o pedido do grupo do estado anterior para o do novo estado
+    public void mover(int idEmpresa, int numero, String anterior, String novo) {
+        if (anterior.equals(novo)) {
+            return;
+        }
+        remover(porEstado, anterior, numero);
+        Map<String, TreeSet<Integer>> daEmpresa = porEmpresaEstado.get(idEmpresa);
+        if (daEmpresa != null) {
+            remover(daEmpresa, anterior, numero);
+        }
+        adicionar(idEmpresa, numero, novo);
+    }
+
+    public int contar(String estado) {
+        return get(estado).size();
+    }
+
+    public int contar(int idEmpresa, String estado) {
+        return get(idEmpresa, estado).size();
+    }
+
+    // Pedidos no estado, em ordem de número; visão somente leitura
+    public SortedSet<Integer> get(String estado) {
+        return somenteLeitura(porEstado.get(estado));
+    }
+
+    // Pedidos da empresa no estado, em ordem de número; visão somente leitura
+    public SortedSet<Integer> get(int idEmpresa, String estado) {
+        Map<String, TreeSet<Integer>> daEmpresa = porEmpresaEstado.get(idEmpresa);
+        return somenteLeitura(daEmpresa == null ? null : daEmpresa.get(estado));
+    }
+
+    public void limpar() {
+        porEstado.clear();
+        porEmpresaEstado.clear();
+    }
+
+    private static void remover(Map<String, TreeSet<Integer>> grupos, String estado, int numero) {
+        TreeSet<Integer> grupo = grupos.get(estado);
+        if (grupo != null && grupo.remove(numero) && grupo.isEmpty()) {
+            grupos.remove(estado);
+        }
+    }
+
+    private static SortedSet<Integer> somenteLeitura(TreeSet<Integer> grupo) {
+        return grupo == null ? Collections.emptySortedSet() : Collections.unmodifiableSortedSet(grupo);
+    }
+}
@@ -0,0 +1,89 @@
+package br.ufal.ic.p2.myfood.services;
+
+import br.ufal.ic.p2.myfood.models.Empresa;
+import br.ufal.ic.p2.myfood.models.Farmacia;
+import br.ufal.ic.p2.myfood.models.Mercado;
+import br.ufal.ic.p2.myfood.models.Restaurante;
+
+import java.util.*;
+
+/**
+ * Índices em bitmap das empresas por faceta: para cada valor de cada faceta, um {@link BitSet}
+ * com os IDs das empresas que o têm. Um filtro combinado é a interseção dos bitmaps dos valores
+ * pedidos, e a contagem de uma faceta é a cardinalidade da interseção do resultado com cada
+ * valor. As facetas não mudam depois que a empresa é criada, então basta indexar na criação.
+ * É um índice derivado, montado na carga a partir das empresas.
+ */
+public class FacetasEmpresas {
+
+    public static final List<String> FACETAS = List.of("tipoEmpresa", "tipoCozinha", "tipoMercado", "aberto24Horas");
+
+    // Faceta → valor → IDs das empresas com esse valor
+    private final Map<String, Map<String, BitSet>> bitmaps = new HashMap<>();
+    private final BitSet todas = new BitSet();
+
+    public static boolean ehFaceta(String faceta) {
+        return FACETAS.contains(faceta);
+    }
+
+    public void adicionar(Empresa empresa) {
+        todas.set(empresa.getId());
+        marcar("tipoEmpresa", empresa.getTipoEmpresa(), empresa.getId());
+        if (empresa instanceof Restaurante) {
+            marcar("tipoCozinha", ((Restaurante) empresa).getTipoCozinha(), empresa.getId());
+        } else if (empresa instanceof Mercado) {
+            marcar("tipoMercado", ((Mercado) empresa).getTipoMercado(), empresa.getId());
+        } else if (empresa instanceof Farmacia) {
+            marcar("aberto24Horas", String.valueOf(((Farmacia) empresa).getAberto24Horas()), empresa.getId());
+        }
+    }
+
+    public void limpar() {
+        bitmaps.clear();
+        todas.clear();
+    }
+
+    /**
+     * IDs das empresas que têm todos os valores pedidos; sem filtros, todas as empresas.
+     *
+     * @param filtros Faceta → valor; as facetas precisam estar em {@link #FACETAS}.
+     * @return Bitmap novo, que pode ser alterado por quem chamou.
+     */
+    public BitSet filtrar(Map<String, String> filtros) {
+        BitSet resultado = (BitSet) todas.clone();
+        for (Map.Entry<String, String> filtro : filtros.entrySet()) {
+            BitSet doValor = bitmaps.getOrDefault(filtro.getKey(), Collections.emptyMap()).get(filtro.getValue());
+            if (doValor == null) {
+                resultado.clear();
+                break;
+            }
+            resultado.and(doValor);
+        }
+        return resultado;
+    }
+
+    /**
+     * Quantas das empresas selecionadas têm cada valor da faceta.
+     *
+     * @return Valor → quantidade, em ordem de valor, só com os valores presentes na seleção.
+     */
+    public SortedMap<String, Integer> contar(BitSet selecionadas, String faceta) {
+        SortedMap<String, Integer> contagem = new TreeMap<>();
+        for (Map.Entry<String, BitSet> valor : bitmaps.getOrDefault(faceta, Collections.emptyMap()).entrySet()) {
+            if (!valor.getValue().intersects(selecionadas)) {
+                continue;
+            }
+            BitSet comum = (BitSet) valor.getValue().clone();
+            comum.and(selecionadas);
+            contagem.put(valor.getKey(), comum.cardinality());
+        }
+        return contagem;
+    }
+
+    private void marcar(String faceta, String valor, int idEmpresa) {
+        if (valor == null) {
+            return;
+        }
+        bitmaps.computeIfAbsent(faceta, f -> new HashMap<>()).computeIfAbsent(valor, v -> new BitSet()).set(idEmpresa);
+    }
+}
@@ -0,0 +1,44 @@
+package br.ufal.ic.p2.myfood.services;
+
+import java.util.*;
+
+/**
+ * Números dos pedidos de cada cliente, por empresa e no total, em ordem de criação.
+ * Inclui os pedidos já arquivados: o arquivamento tira o pedido da memória, mas não do histórico.
+ * É um índice derivado, montado na carga a partir dos pedidos em memória e do índice do arquivo.
+ */
+public class HistoricoPedidos {
+
+    // Chave Snapshot.chaveClienteEmpresa
+    private final Map<Long, List<Integer>> porClienteEmpresa = new HashMap<>();
+    private final Map<Integer, List<Integer>> porCliente = new HashMap<>();
+
+    // Números novos são sempre maiores que os anteriores, então basta acrescentar no fim
+    public void registrar(int idCliente, int idEmpresa, int numero) {
+        porClienteEmpresa.computeIfAbsent(Snapshot.chaveClienteEmpresa(idCliente, idEmpresa), k -> new ArrayList<>()).add(numero);
+        porCliente.computeIfAbsent(idCliente, k -> new ArrayList<>()).add(numero);
+    }
+
+    // Pedidos do cliente na empresa, em ordem de criação; visão somente leitura
+    public List<Integer> getDoClienteNaEmpresa(int idCliente, int idEmpresa) {
+        List<Integer> numeros = porClienteEmpresa.get(Snapshot.chaveClienteEmpresa(idCliente, idEmpresa));
+        return numeros == null ? Collections.emptyList() : Collections.unmodifiableList(numeros);
+    }
+
+    // Pedidos do cliente em todas as empresas, em ordem de criação; visão somente leitura
+    public List<Integer> getDoCliente(int idCliente) {
+        List<Integer> numeros = porCliente.get(idCliente);
+        return numeros == null ? Collections.emptyList() : Collections.unmodifiableList(numeros);
+    }
+
+    // Reordena as listas depois de registrar números fora de ordem (pedidos arquivados, na carga)
+    public void ordenar() {
+        porClienteEmpresa.values().forEach(Collections::sort);
+        porCliente.values().forEach(Collections::sort);
+    }
+
+    public void limpar() {
+        porClienteEmpresa.clear();
+        porCliente.clear();
+    }
+}
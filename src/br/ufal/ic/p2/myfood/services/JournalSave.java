@@ -0,0 +1,436 @@
+package br.ufal.ic.p2.myfood.services;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Journal (write-ahead log) das operações que alteram o sistema.
+ * Cada operação bem-sucedida vira um registro compacto anexado ao fim do arquivo,
+ * e o fsync é feito em grupo: a cada INTERVALO_SYNC_MS ou quando MAX_PENDENTES
+ * registros ainda não sincronizados se acumulam.
+ * Na inicialização, os registros posteriores ao último checkpoint são reproduzidos
+ * sobre o snapshot salvo.
+ *
+ * Cada registro é gravado como tamanho (4 bytes) | CRC32C do conteúdo (4 bytes) | conteúdo.
+ * A recuperação lê o arquivo em streaming, aplicando cada registro assim que ele é validado,
+ * e para no primeiro registro incompleto ou corrompido: o journal é truncado ali e o que vinha
+ * depois é descartado e contabilizado em {@link Recuperacao}.
+ *
+ * O journal só é cortado quando um snapshot completo é gravado, e só até o início do snapshot
+ * completo anterior, então cobre os deltas e também a volta a esse anterior. Se mesmo assim
+ * faltar um trecho da sequência depois do estado carregado, as operações dele se perderam; a
+ * lacuna é contada em {@link Recuperacao#getRegistrosPerdidos()}.
+ */
+public class JournalSave implements Closeable {
+
+    private static final String FILE_PATH = "journal.log";
+    private static final String TEMP_PATH = "journal.log.tmp";
+    private static final long INTERVALO_SYNC_MS = 10;
+    private static final int MAX_PENDENTES = 64;
+    // Sequência (8 bytes), operação e número de argumentos
+    private static final int TAMANHO_MINIMO = 10;
+
+    // Tags dos argumentos gravados em cada registro
+    private static final byte TAG_NULO = 0;
+    private static final byte TAG_INT = 1;
+    private static final byte TAG_FLOAT = 2;
+    private static final byte TAG_BOOLEAN = 3;
+    // Tamanho (4 bytes) e UTF-8; a tag 4 era a string limitada a 64 KB do writeUTF e não é mais aceita
+    private static final byte TAG_STRING = 5;
+
+    // Operações registradas; a posição no enum é o código gravado no arquivo, então só acrescente no final
+    public enum Operacao {
+        ZERAR_SISTEMA,
+        CRIAR_CLIENTE,
+        CRIAR_DONO,
+        CRIAR_ENTREGADOR,
+        CADASTRAR_ENTREGADOR,
+        CRIAR_RESTAURANTE,
+        CRIAR_MERCADO,
+        CRIAR_FARMACIA,
+        ALTERAR_FUNCIONAMENTO,
+        CRIAR_PRODUTO,
+        EDITAR_PRODUTO,
+        CRIAR_PEDIDO,
+        ADICIONAR_PRODUTO,
+        FECHAR_PEDIDO,
+        REMOVER_PRODUTO,
+        LIBERAR_PEDIDO,
+        CRIAR_ENTREGA,
+        ENTREGAR
+    }
+
+    // Registro lido do journal
+    public static class Registro {
+        private final long sequencia;
+        private final Operacao operacao;
+        private final Object[] argumentos;
+
+        public Registro(long sequencia, Operacao operacao, Object[] argumentos) {
+            this.sequencia = sequencia;
+            this.operacao = operacao;
+            this.argumentos = argumentos;
+        }
+
+        public long getSequencia() {
+            return sequencia;
+        }
+
+        public Operacao getOperacao() {
+            return operacao;
+        }
+
+        public Object[] getArgumentos() {
+            return argumentos;
+        }
+    }
+
+    // Recebe cada registro válido durante a recuperação
+    public interface Consumidor {
+        void aplicar(Registro registro) throws IOException;
+    }
+
+    // Resultado da leitura do journal na inicialização
+    public static class Recuperacao {
+        private long tamanhoValido;
+        private long bytesDescartados;
+        private int registrosAplicados;
+        private long registrosPerdidos;
+        private long posicaoBase;
+        private long ultimaSequencia;
+        private long nanos;
+
+        public long getTamanhoValido() {
+            return tamanhoValido;
+        }
+
+        public long getBytesDescartados() {
+            return bytesDescartados;
+        }
+
+        public int getRegistrosAplicados() {
+            return registrosAplicados;
+        }
+
+        // Sequências que faltam entre o estado carregado e os registros reaplicados
+        public long getRegistrosPerdidos() {
+            return registrosPerdidos;
+        }
+
+        // Fim do último registro coberto pelo snapshot base, sem contar os deltas
+        public long getPosicaoBase() {
+            return posicaoBase;
+        }
+
+        public long getUltimaSequencia() {
+            return ultimaSequencia;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+    }
+
+    private FileChannel canal;
+    private final ScheduledExecutorService sincronizador;
+    private long sequencia;
+    private int pendentes;
+
+    private JournalSave(FileChannel canal, long sequencia) {
+        this.canal = canal;
+        this.sequencia = sequencia;
+        this.sincronizador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sincronizador.scheduleWithFixedDelay(this::sincronizarSilenciosamente,
+                INTERVALO_SYNC_MS, INTERVALO_SYNC_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Percorre o journal entregando ao consumidor, em ordem, os registros com sequência maior que
+     * a informada. A leitura termina no primeiro registro incompleto (queda no meio da escrita) ou
+     * com checksum inválido; nada depois dele é aplicado. A sequência do snapshot base, anterior
+     * aos deltas, só serve para localizar onde começam os registros que ele não cobre.
+     */
+    public static Recuperacao recuperar(long aPartirDe, long sequenciaBase, Consumidor consumidor) throws IOException {
+        long inicio = System.nanoTime();
+        Recuperacao recuperacao = new Recuperacao();
+        recuperacao.ultimaSequencia = aPartirDe;
+        File file = new File(FILE_PATH);
+        if (!file.exists()) {
+            recuperacao.nanos = System.nanoTime() - inicio;
+            return recuperacao;
+        }
+        long tamanhoArquivo = file.length();
+        long posicao = 0;
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (posicao + 8 <= tamanhoArquivo) {
+                int tamanho = dis.readInt();
+                int crc = dis.readInt();
+                if (tamanho < TAMANHO_MINIMO || tamanho > tamanhoArquivo - posicao - 8) {
+                    break;
+                }
+                byte[] conteudo = new byte[tamanho];
+                dis.readFully(conteudo);
+                if (crc32c(conteudo) != crc) {
+                    break;
+                }
+                Registro registro;
+                try {
+                    registro = decodificar(conteudo);
+                } catch (IOException e) {
+                    break;
+                }
+                if (registro.getSequencia() <= sequenciaBase) {
+                    recuperacao.posicaoBase = posicao + 8 + tamanho;
+                }
+                posicao += 8 + tamanho;
+                if (registro.getSequencia() > recuperacao.ultimaSequencia) {
+                    recuperacao.registrosPerdidos += registro.getSequencia() - recuperacao.ultimaSequencia - 1;
+                    consumidor.aplicar(registro);
+                    recuperacao.ultimaSequencia = registro.getSequencia();
+                    recuperacao.registrosAplicados++;
+                }
+            }
+        }
+        recuperacao.tamanhoValido = posicao;
+        recuperacao.bytesDescartados = tamanhoArquivo - posicao;
+        recuperacao.nanos = System.nanoTime() - inicio;
+        return recuperacao;
+    }
+
+    /**
+     * Abre o journal para anexar novos registros, truncando-o no fim do último registro válido.
+     */
+    public static JournalSave abrir(Recuperacao recuperacao) throws IOException {
+        FileChannel canal = FileChannel.open(Paths.get(FILE_PATH),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (canal.size() > recuperacao.getTamanhoValido()) {
+            canal.truncate(recuperacao.getTamanhoValido());
+            canal.force(true);
+        }
+        canal.position(canal.size());
+        return new JournalSave(canal, recuperacao.getUltimaSequencia());
+    }
+
+    /**
+     * Anexa um registro ao journal com uma única escrita sequencial. Se a escrita falhar, o
+     * arquivo volta ao fim do registro anterior e a sequência não é consumida.
+     *
+     * @return Sequência atribuída ao registro.
+     */
+    public synchronized long registrar(Operacao operacao, Object... argumentos) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bytes);
+        dos.writeInt(0); // Reservado para o tamanho do registro
+        dos.writeInt(0); // Reservado para o checksum
+        dos.writeLong(sequencia + 1);
+        dos.writeByte(operacao.ordinal());
+        dos.writeByte(argumentos.length);
+        for (Object argumento : argumentos) {
+            escreverArgumento(dos, argumento);
+        }
+        dos.flush();
+
+        byte[] dados = bytes.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(dados, 8, dados.length - 8);
+        ByteBuffer registro = ByteBuffer.wrap(dados);
+        registro.putInt(0, dados.length - 8);
+        registro.putInt(4, (int) crc.getValue());
+        long fim = canal.position();
+        try {
+            while (registro.hasRemaining()) {
+                canal.write(registro);
+            }
+        } catch (IOException e) {
+            try {
+                canal.truncate(fim);
+                canal.position(fim);
+            } catch (IOException falha) {
+                e.addSuppressed(falha);
+            }
+            throw e;
+        }
+        sequencia++;
+
+        // O registro já está no arquivo; uma falha do fsync em grupo aparece no próximo sincronizar()
+        if (++pendentes >= MAX_PENDENTES) {
+            sincronizarSilenciosamente();
+        }
+        return sequencia;
+    }
+
+    /**
+     * Força no disco todos os registros anexados até agora.
+     */
+    public synchronized void sincronizar() throws IOException {
+        if (pendentes > 0) {
+            canal.force(false);
+            pendentes = 0;
+        }
+    }
+
+    /**
+     * Descarta os registros já cobertos por um checkpoint, mantendo a sequência.
+     */
+    public synchronized void truncar() throws IOException {
+        canal.truncate(0);
+        canal.position(0);
+        canal.force(true);
+        pendentes = 0;
+    }
+
+    /**
+     * Descarta os registros anteriores à posição informada, capturada junto com o estado de um
+     * checkpoint, mantendo os que foram anexados enquanto ele era gravado. A cauda é copiada
+     * direto entre os arquivos para um temporário, que é aberto antes de ser publicado com um
+     * rename atômico; se algo falhar, o journal continua no arquivo e no canal anteriores.
+     */
+    public synchronized void descartarAte(long posicao) throws IOException {
+        if (posicao <= 0) {
+            return;
+        }
+        long tamanho = canal.size();
+        if (posicao >= tamanho) {
+            truncar();
+            return;
+        }
+        FileChannel novo = FileChannel.open(Paths.get(TEMP_PATH), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            long copiados = 0;
+            while (posicao + copiados < tamanho) {
+                long n = canal.transferTo(posicao + copiados, tamanho - posicao - copiados, novo);
+                if (n <= 0) {
+                    throw new IOException("Falha ao copiar a cauda do journal");
+                }
+                copiados += n;
+            }
+            novo.force(true);
+            Files.move(Paths.get(TEMP_PATH), Paths.get(FILE_PATH),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            try {
+                novo.close();
+                Files.deleteIfExists(Paths.get(TEMP_PATH));
+            } catch (IOException falha) {
+                e.addSuppressed(falha);
+            }
+            throw e;
+        }
+        FileChannel anterior = canal;
+        canal = novo;
+        canal.position(canal.size());
+        pendentes = 0;
+        anterior.close();
+    }
+
+    // Fim do último registro anexado
+    public synchronized long getPosicao() throws IOException {
+        return canal.position();
+    }
+
+    public synchronized long getSequencia() {
+        return sequencia;
+    }
+
+    // Sincroniza o que falta e libera a thread de fsync e o arquivo; chamadas repetidas não fazem nada
+    @Override
+    public synchronized void close() throws IOException {
+        if (!canal.isOpen()) {
+            return;
+        }
+        sincronizador.shutdown();
+        sincronizar();
+        canal.close();
+    }
+
+    private void sincronizarSilenciosamente() {
+        try {
+            sincronizar();
+        } catch (IOException e) {
+            // Uma falha aqui será percebida no próximo sincronizar() explícito
+        }
+    }
+
+    private static void escreverArgumento(DataOutputStream dos, Object argumento) throws IOException {
+        if (argumento == null) {
+            dos.writeByte(TAG_NULO);
+        } else if (argumento instanceof Integer) {
+            dos.writeByte(TAG_INT);
+            dos.writeInt((Integer) argumento);
+        } else if (argumento instanceof Float) {
+            dos.writeByte(TAG_FLOAT);
+            dos.writeFloat((Float) argumento);
+        } else if (argumento instanceof Boolean) {
+            dos.writeByte(TAG_BOOLEAN);
+            dos.writeBoolean((Boolean) argumento);
+        } else if (argumento instanceof String) {
+            byte[] texto = ((String) argumento).getBytes(StandardCharsets.UTF_8);
+            dos.writeByte(TAG_STRING);
+            dos.writeInt(texto.length);
+            dos.write(texto);
+        } else {
+            throw new IllegalArgumentException("Tipo de argumento nao suportado no journal: " + argumento.getClass());
+        }
+    }
+
+    private static int crc32c(byte[] dados) {
+        CRC32C crc = new CRC32C();
+        crc.update(dados, 0, dados.length);
+        return (int) crc.getValue();
+    }
+
+    private static Registro decodificar(byte[] conteudo) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(conteudo));
+        long sequencia = dis.readLong();
+        int codigo = dis.readUnsignedByte();
+        if (codigo >= Operacao.values().length) {
+            throw new IOException("Operacao invalida no journal: " + codigo);
+        }
+        Operacao operacao = Operacao.values()[codigo];
+        Object[] argumentos = new Object[dis.readUnsignedByte()];
+        for (int i = 0; i < argumentos.length; i++) {
+            byte tag = dis.readByte();
+            switch (tag) {
+                case TAG_NULO:
+                    argumentos[i] = null;
+                    break;
+                case TAG_INT:
+                    argumentos[i] = dis.readInt();
+                    break;
+                case TAG_FLOAT:
+                    argumentos[i] = dis.readFloat();
+                    break;
+                case TAG_BOOLEAN:
+                    argumentos[i] = dis.readBoolean();
+                    break;
+                case TAG_STRING:
+                    int tamanho = dis.readInt();
+                    if (tamanho < 0 || tamanho > dis.available()) {
+                        throw new IOException("String invalida no journal: " + tamanho + " bytes");
+                    }
+                    byte[] texto = new byte[tamanho];
+                    dis.readFully(texto);
+                    argumentos[i] = new String(texto, StandardCharsets.UTF_8);
+                    break;
+                default:
+                    throw new IOException("Argumento invalido no journal: " + tag);
+            }
+        }
+        return new Registro(sequencia, operacao, argumentos);
+    }
+}
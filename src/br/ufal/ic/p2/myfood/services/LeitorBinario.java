@@ -0,0 +1,131 @@
+package br.ufal.ic.p2.myfood.services;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Lê os valores gravados por {@link EscritorBinario}, reconstruindo a tabela de strings
+ * na mesma ordem em que ela foi montada na escrita.
+ */
+public class LeitorBinario {
+
+    private final byte[] dados;
+    private int posicao;
+    private final int fim;
+    private final List<String> tabelaStrings = new ArrayList<>();
+
+    public LeitorBinario(byte[] dados) {
+        this(dados, 0, dados.length);
+    }
+
+    public LeitorBinario(byte[] dados, int inicio, int tamanho) {
+        this.dados = dados;
+        this.posicao = inicio;
+        this.fim = inicio + tamanho;
+    }
+
+    public int lerByte() throws IOException {
+        if (posicao >= fim) {
+            throw new IOException("Fim inesperado dos dados binarios");
+        }
+        return dados[posicao++] & 0xFF;
+    }
+
+    public int lerVarint() throws IOException {
+        int valor = 0;
+        for (int deslocamento = 0; deslocamento < 32; deslocamento += 7) {
+            int b = lerByte();
+            valor |= (b & 0x7F) << deslocamento;
+            if ((b & 0x80) == 0) {
+                return valor;
+            }
+        }
+        throw new IOException("Varint malformado");
+    }
+
+    public long lerVarlong() throws IOException {
+        long valor = 0;
+        for (int deslocamento = 0; deslocamento < 64; deslocamento += 7) {
+            int b = lerByte();
+            valor |= (long) (b & 0x7F) << deslocamento;
+            if ((b & 0x80) == 0) {
+                return valor;
+            }
+        }
+        throw new IOException("Varlong malformado");
+    }
+
+    public int lerInt() throws IOException {
+        int valor = lerVarint();
+        return (valor >>> 1) ^ -(valor & 1);
+    }
+
+    public float lerFloat() throws IOException {
+        int bits = (lerByte() << 24) | (lerByte() << 16) | (lerByte() << 8) | lerByte();
+        return Float.intBitsToFloat(bits);
+    }
+
+    public int lerFixo32() throws IOException {
+        return (lerByte() << 24) | (lerByte() << 16) | (lerByte() << 8) | lerByte();
+    }
+
+    public boolean lerBoolean() throws IOException {
+        return lerByte() != 0;
+    }
+
+    public String lerString() throws IOException {
+        int codigo = lerVarint();
+        if (codigo == 0) {
+            return null;
+        }
+        if (codigo >= 2) {
+            if (codigo - 2 >= tabelaStrings.size()) {
+                throw new IOException("Indice invalido na tabela de strings");
+            }
+            return tabelaStrings.get(codigo - 2);
+        }
+        int tamanho = lerVarint();
+        if (tamanho < 0 || posicao + tamanho > fim) {
+            throw new IOException("String excede os dados binarios");
+        }
+        String valor = new String(dados, posicao, tamanho, StandardCharsets.UTF_8);
+        posicao += tamanho;
+        tabelaStrings.add(valor);
+        return valor;
+    }
+
+    // Recorte dos próximos bytes como um leitor independente, com sua própria tabela de strings
+    public LeitorBinario recortar(int tamanho) throws IOException {
+        if (tamanho < 0 || posicao + tamanho > fim) {
+            throw new IOException("Secao excede os dados binarios");
+        }
+        LeitorBinario recorte = new LeitorBinario(dados, posicao, tamanho);
+        posicao += tamanho;
+        return recorte;
+    }
+
+    // CRC32C dos bytes ainda não lidos
+    public int crc32c() {
+        CRC32C crc = new CRC32C();
+        crc.update(dados, posicao, fim - posicao);
+        return (int) crc.getValue();
+    }
+
+    // CRC32C dos bytes já lidos desde o início informado
+    public int crc32cDesde(int inicio) {
+        CRC32C crc = new CRC32C();
+        crc.update(dados, inicio, posicao - inicio);
+        return (int) crc.getValue();
+    }
+
+    public int getPosicao() {
+        return posicao;
+    }
+
+    public boolean temMais() {
+        return posicao < fim;
+    }
+}
@@ -0,0 +1,332 @@
+package br.ufal.ic.p2.myfood.services;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Persiste o snapshot do sistema em um único arquivo.
+ * O snapshot é escrito em um arquivo temporário, sincronizado com o disco, relido para conferir
+ * os checksums e só então publicado com um rename atômico, de modo que sistema.dat é sempre o
+ * snapshot antigo completo ou o novo completo. O snapshot substituído fica em
+ * sistema.dat.anterior, e o journal continua cobrindo tudo desde ele: se sistema.dat não puder
+ * ser lido, a carga usa o anterior, descarta os deltas (o journal cobre o que eles tinham) e o
+ * publica de novo como sistema.dat, renomeando o arquivo ruim para sistema.dat.corrompido.
+ *
+ * O formato de escrita é escolhido pela propriedade "myfood.snapshot": "binario" (padrão,
+ * {@link SnapshotCodec}) ou "java" (serialização do Java). Na leitura o formato é
+ * reconhecido pelo cabeçalho do arquivo, então os dois podem ser trocados a qualquer momento.
+ *
+ * No formato binário, checkpoints intermediários gravam só as entradas alteradas em arquivos
+ * sistema.delta.N, aplicados em ordem sobre sistema.dat na leitura. Um snapshot completo
+ * apaga os deltas anteriores.
+ *
+ * Os dois formatos têm checksum CRC32C: por seção no binário e sobre o arquivo inteiro na
+ * serialização Java, gravada como "MYFJ" | CRC32C | stream (arquivos Java antigos, sem esse
+ * cabeçalho, continuam legíveis). Os dois são lidos como streams, sem carregar o arquivo inteiro
+ * em memória. Um delta corrompido é renomeado para sistema.delta.N.corrompido e ignorado junto
+ * com os seguintes, e o total descartado fica em getBytesDescartados().
+ *
+ * Com "myfood.carregamento=paralelo", as seções de um snapshot binário são lidas em paralelo
+ * na inicialização. O snapshot Java é um único stream e é sempre lido sequencialmente.
+ */
+public class SistemaSave {
+
+    private static final String FILE_PATH = "sistema.dat";
+    private static final String TEMP_PATH = "sistema.dat.tmp";
+    private static final String ANTERIOR_PATH = "sistema.dat.anterior";
+    private static final String DELTA_PREFIXO = "sistema.delta.";
+    private static final String SUFIXO_CORROMPIDO = ".corrompido";
+    private static final byte[] MAGICO_JAVA = {'M', 'Y', 'F', 'J'};
+
+    public enum Formato { JAVA, BINARIO }
+
+    public static Formato getFormato() {
+        return Formato.valueOf(System.getProperty("myfood.snapshot", "binario").toUpperCase());
+    }
+
+    // Retorna o número de bytes escritos
+    public static int salvarSnapshot(Snapshot snapshot) throws IOException {
+        return salvarSnapshot(snapshot, getFormato());
+    }
+
+    public static int salvarSnapshot(Snapshot snapshot, Formato formato) throws IOException {
+        byte[] dados = formato == Formato.BINARIO ? SnapshotCodec.codificar(snapshot) : emoldurar(serializar(snapshot));
+        escreverTemporario(dados);
+        try (InputStream entrada = new BufferedInputStream(Files.newInputStream(Paths.get(TEMP_PATH)))) {
+            if (formato == Formato.BINARIO) {
+                SnapshotCodec.verificar(entrada);
+            } else {
+                verificarJava(entrada);
+            }
+        }
+        // O snapshot substituído vira o anterior; o journal só é cortado até o início dele
+        Path arquivo = Paths.get(FILE_PATH);
+        if (Files.exists(arquivo)) {
+            Files.move(arquivo, Paths.get(ANTERIOR_PATH), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(Paths.get(TEMP_PATH), arquivo, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        apagarDeltas();
+        return dados.length;
+    }
+
+    // Grava o próximo delta; retorna o número de bytes escritos
+    public static int salvarDelta(Snapshot snapshot, Alteracoes alteracoes) throws IOException {
+        byte[] dados = SnapshotCodec.codificarDelta(snapshot, alteracoes);
+        List<Path> deltas = listarDeltas();
+        int proximo = deltas.isEmpty() ? 1 : numeroDelta(deltas.get(deltas.size() - 1)) + 1;
+        publicar(dados, Paths.get(DELTA_PREFIXO + proximo));
+        return dados.length;
+    }
+
+    public static boolean existeSnapshot() {
+        return Files.exists(Paths.get(FILE_PATH));
+    }
+
+    // Deltas só podem ser aplicados sobre um snapshot base no formato binário
+    public static boolean aceitaDelta() throws IOException {
+        Path arquivo = Paths.get(FILE_PATH);
+        if (getFormato() != Formato.BINARIO || !Files.exists(arquivo)) {
+            return false;
+        }
+        byte[] cabecalho = new byte[SnapshotCodec.MAGICO.length];
+        try (InputStream entrada = Files.newInputStream(arquivo)) {
+            return entrada.readNBytes(cabecalho, 0, cabecalho.length) == cabecalho.length
+                    && SnapshotCodec.ehBinario(cabecalho);
+        }
+    }
+
+    public static int quantidadeDeltas() throws IOException {
+        return listarDeltas().size();
+    }
+
+    private static void publicar(byte[] dados, Path destino) throws IOException {
+        escreverTemporario(dados);
+        Files.move(Paths.get(TEMP_PATH), destino,
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void escreverTemporario(byte[] dados) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(TEMP_PATH)) {
+            fos.write(dados);
+            fos.getFD().sync();
+        }
+    }
+
+    // Deltas em ordem de gravação
+    private static List<Path> listarDeltas() throws IOException {
+        List<Path> deltas = new ArrayList<>();
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(Paths.get("."), DELTA_PREFIXO + "*")) {
+            for (Path arquivo : arquivos) {
+                if (numeroDelta(arquivo) > 0) {
+                    deltas.add(arquivo);
+                }
+            }
+        }
+        deltas.sort(Comparator.comparingInt(SistemaSave::numeroDelta));
+        return deltas;
+    }
+
+    private static int numeroDelta(Path arquivo) {
+        try {
+            return Integer.parseInt(arquivo.getFileName().toString().substring(DELTA_PREFIXO.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void apagarDeltas() throws IOException {
+        for (Path delta : listarDeltas()) {
+            Files.deleteIfExists(delta);
+        }
+    }
+
+    // Retorna um snapshot vazio quando o sistema ainda não foi salvo
+    public static Snapshot carregarSnapshot() throws IOException, ClassNotFoundException {
+        Path arquivo = Paths.get(FILE_PATH);
+        Path anterior = Paths.get(ANTERIOR_PATH);
+        Snapshot snapshot;
+        if (Files.exists(arquivo)) {
+            try {
+                snapshot = ler(arquivo, listarDeltas());
+            } catch (IOException e) {
+                if (!Files.exists(anterior)) {
+                    throw e;
+                }
+                try {
+                    snapshot = restaurarAnterior();
+                } catch (IOException | ClassNotFoundException falha) {
+                    falha.addSuppressed(e);
+                    throw falha;
+                }
+            }
+        } else if (Files.exists(anterior)) {
+            snapshot = restaurarAnterior(); // Queda entre os dois renames de salvarSnapshot
+        } else {
+            return new Snapshot();
+        }
+
+        long inicio = System.nanoTime();
+        snapshot.reconstruirIndices(isCarregamentoParalelo());
+        snapshot.getTemposCarregamento().put("indices", System.nanoTime() - inicio);
+        return snapshot;
+    }
+
+    private static Snapshot ler(Path arquivo, List<Path> deltas) throws IOException, ClassNotFoundException {
+        try (InputStream entrada = new BufferedInputStream(Files.newInputStream(arquivo))) {
+            byte[] cabecalho = new byte[SnapshotCodec.MAGICO.length];
+            entrada.mark(cabecalho.length);
+            entrada.readNBytes(cabecalho, 0, cabecalho.length);
+            entrada.reset();
+            if (SnapshotCodec.ehBinario(cabecalho)) {
+                Snapshot snapshot = SnapshotCodec.decodificar(entrada, deltas, isCarregamentoParalelo());
+                descartarDeltas(snapshot, deltas);
+                return snapshot;
+            }
+            if (!deltas.isEmpty()) {
+                throw new IOException("Deltas encontrados sobre um snapshot em serializacao Java");
+            }
+            long inicio = System.nanoTime();
+            Snapshot snapshot = lerJava(entrada);
+            snapshot.getTemposCarregamento().put("desserializacao", System.nanoTime() - inicio);
+            snapshot.setSequenciaBase(snapshot.getSequenciaJournal());
+            return snapshot;
+        }
+    }
+
+    /**
+     * Carrega sistema.dat.anterior no lugar de um sistema.dat ilegível ou ausente. Os deltas eram
+     * relativos ao snapshot perdido e são apagados: o journal, cortado só até o início do anterior,
+     * tem todas as operações gravadas neles. O anterior é publicado como sistema.dat, para que o
+     * próximo snapshot completo o mantenha como anterior.
+     */
+    private static Snapshot restaurarAnterior() throws IOException, ClassNotFoundException {
+        Path arquivo = Paths.get(FILE_PATH);
+        Path anterior = Paths.get(ANTERIOR_PATH);
+        Snapshot snapshot = ler(anterior, Collections.emptyList());
+
+        long bytes = 0;
+        if (Files.exists(arquivo)) {
+            bytes += Files.size(arquivo);
+            Files.move(arquivo, arquivo.resolveSibling(FILE_PATH + SUFIXO_CORROMPIDO),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        for (Path delta : listarDeltas()) {
+            bytes += Files.size(delta);
+            Files.delete(delta);
+        }
+        Files.copy(anterior, Paths.get(TEMP_PATH), StandardCopyOption.REPLACE_EXISTING);
+        try (FileChannel canal = FileChannel.open(Paths.get(TEMP_PATH), StandardOpenOption.WRITE)) {
+            canal.force(true);
+        }
+        Files.move(Paths.get(TEMP_PATH), arquivo, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        snapshot.setBytesDescartados(bytes);
+        snapshot.setBaseAnterior(true);
+        return snapshot;
+    }
+
+    // Renomeia os deltas ignorados pelo codec, para que não voltem a ser aplicados nem numerados
+    private static void descartarDeltas(Snapshot snapshot, List<Path> deltas) throws IOException {
+        if (snapshot.getDeltasDescartados() == 0) {
+            return;
+        }
+        long bytes = 0;
+        for (int i = deltas.size() - snapshot.getDeltasDescartados(); i < deltas.size(); i++) {
+            Path delta = deltas.get(i);
+            bytes += Files.size(delta);
+            Files.move(delta, delta.resolveSibling(delta.getFileName() + SUFIXO_CORROMPIDO),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        snapshot.setBytesDescartados(bytes);
+    }
+
+    // Serialização Java precedida de "MYFJ" e do CRC32C do stream
+    private static byte[] emoldurar(byte[] serializado) {
+        byte[] dados = new byte[MAGICO_JAVA.length + 4 + serializado.length];
+        System.arraycopy(MAGICO_JAVA, 0, dados, 0, MAGICO_JAVA.length);
+        ByteBuffer.wrap(dados, MAGICO_JAVA.length, 4).putInt(crc32c(serializado, 0, serializado.length));
+        System.arraycopy(serializado, 0, dados, MAGICO_JAVA.length + 4, serializado.length);
+        return dados;
+    }
+
+    /**
+     * Desserializa o stream calculando o CRC32C enquanto lê. Um stream corrompido costuma falhar
+     * antes do fim; nesse caso o resto é percorrido para decidir se a falha foi de checksum.
+     */
+    private static Snapshot lerJava(InputStream entrada) throws IOException, ClassNotFoundException {
+        entrada.mark(MAGICO_JAVA.length);
+        if (!Arrays.equals(entrada.readNBytes(MAGICO_JAVA.length), MAGICO_JAVA)) {
+            entrada.reset();
+            return desserializar(entrada); // Snapshot Java gravado antes dos checksums
+        }
+        int esperado = new DataInputStream(entrada).readInt();
+        CheckedInputStream conteudo = new CheckedInputStream(entrada, new CRC32C());
+        Snapshot snapshot;
+        try {
+            snapshot = desserializar(conteudo);
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            if (!confere(conteudo, esperado)) {
+                throw new IOException("Checksum invalido no snapshot em serializacao Java", e);
+            }
+            throw e;
+        }
+        if (!confere(conteudo, esperado)) {
+            throw new IOException("Checksum invalido no snapshot em serializacao Java");
+        }
+        return snapshot;
+    }
+
+    private static void verificarJava(InputStream entrada) throws IOException {
+        if (!Arrays.equals(entrada.readNBytes(MAGICO_JAVA.length), MAGICO_JAVA)) {
+            throw new IOException("Cabecalho invalido no snapshot em serializacao Java");
+        }
+        int esperado = new DataInputStream(entrada).readInt();
+        if (!confere(new CheckedInputStream(entrada, new CRC32C()), esperado)) {
+            throw new IOException("Checksum invalido no snapshot em serializacao Java");
+        }
+    }
+
+    // Consome o que resta do stream e compara o CRC32C acumulado com o esperado
+    private static boolean confere(CheckedInputStream conteudo, int esperado) throws IOException {
+        conteudo.transferTo(OutputStream.nullOutputStream());
+        return (int) conteudo.getChecksum().getValue() == esperado;
+    }
+
+    private static int crc32c(byte[] dados, int inicio, int tamanho) {
+        CRC32C crc = new CRC32C();
+        crc.update(dados, inicio, tamanho);
+        return (int) crc.getValue();
+    }
+
+    public static boolean isCarregamentoParalelo() {
+        return "paralelo".equalsIgnoreCase(System.getProperty("myfood.carregamento"));
+    }
+
+    public static byte[] serializar(Snapshot snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(snapshot);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Não fecha o stream, que pertence a quem chamou
+    public static Snapshot desserializar(InputStream entrada) throws IOException, ClassNotFoundException {
+        return (Snapshot) new ObjectInputStream(entrada).readObject();
+    }
+}
@@ -0,0 +1,453 @@
+package br.ufal.ic.p2.myfood.services;
+
+import br.ufal.ic.p2.myfood.models.*;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ToIntFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Estado completo do sistema gravado em um único stream.
+ * Guarda também os contadores de ID e a sequência do journal coberta por este snapshot.
+ *
+ * Só as entidades são persistidas. Os índices (os campos transient, como usuariosPorEmail,
+ * produtosPorRestaurante ou o despacho) são derivados das chaves estrangeiras e dos estados das
+ * entidades e reconstruídos na carga por {@link #reconstruirIndices(boolean)}.
+ */
+public class Snapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Map<Integer, Usuario> usuarios = new HashMap<>();
+    private Map<Integer, Empresa> empresas = new HashMap<>();
+    private Map<Integer, Produto> produtos = new HashMap<>();
+    private Map<Integer, Pedido> pedidos = new HashMap<>();
+    private Map<Integer, Entrega> entregas = new HashMap<>();
+
+    // Índices derivados; não são persistidos
+    private transient Map<String, Usuario> usuariosPorEmail = new HashMap<>();
+    private transient Map<String, Entregador> entregadoresPorPlaca = new HashMap<>();
+    private transient Map<Integer, List<Empresa>> empresasPorDono = new HashMap<>();
+    private transient Map<String, List<Empresa>> empresasPorNome = new HashMap<>();
+    private transient Map<List<String>, Empresa> empresaPorNomeEndereco = new HashMap<>();
+    private transient Map<Integer, List<Produto>> produtosPorRestaurante = new HashMap<>();
+    private transient Map<Integer, Map<String, Produto>> produtoPorNome = new HashMap<>();
+    private transient BuscaProdutos buscaProdutos = new BuscaProdutos();
+    private transient CardapioPrecos cardapioPrecos = new CardapioPrecos();
+    private transient FacetasEmpresas facetasEmpresas = new FacetasEmpresas();
+    private transient Map<Integer, List<Pedido>> pedidosPorRestaurante = new HashMap<>();
+    private transient Map<Long, Pedido> pedidoAbertoPorClienteEmpresa = new HashMap<>();
+    private transient HistoricoPedidos historicoPedidos = new HistoricoPedidos();
+    private transient Map<Integer, Map<Integer, Empresa>> empresasPorEntregador = new HashMap<>();
+    private transient Map<Integer, Entrega> entregaPorPedido = new HashMap<>();
+    private transient EstadosPedidos estadosPedidos = new EstadosPedidos();
+    private transient Despacho despacho = new Despacho(estadosPedidos);
+
+    private long sequenciaJournal = 0;
+    private int contadorUsuarios = 1;
+    private int contadorEmpresas = 1;
+    private int contadorProdutos = 0;
+    private int contadorPedidos = 0;
+
+    // Tempo gasto em cada etapa do carregamento, em nanossegundos; não é persistido
+    private transient Map<String, Long> temposCarregamento = new LinkedHashMap<>();
+    // Deltas corrompidos ignorados na carga e seu tamanho em bytes; não são persistidos
+    private transient int deltasDescartados;
+    private transient long bytesDescartados;
+    // Sequência do journal gravada no próprio snapshot base, antes dos deltas; não é persistida
+    private transient long sequenciaBase;
+    // Carregado de sistema.dat.anterior porque sistema.dat não pôde ser lido; não é persistido
+    private transient boolean baseAnterior;
+
+    /**
+     * Cópia do estado para ser codificada fora da pausa de um checkpoint. Empresas, produtos e
+     * pedidos são copiados, pois mudam depois de criados; usuários e entregas são compartilhados.
+     * Os índices não são copiados, pois não são gravados. Com alteracoes != null, copia só
+     * as entradas marcadas.
+     */
+    public Snapshot copiar(Alteracoes alteracoes) {
+        Snapshot copia = new Snapshot();
+        copia.usuarios = copiarMapa(usuarios, alteracoes, Alteracoes.Colecao.USUARIOS, UnaryOperator.identity());
+        copia.empresas = copiarMapa(empresas, alteracoes, Alteracoes.Colecao.EMPRESAS, Empresa::copiar);
+        copia.produtos = copiarMapa(produtos, alteracoes, Alteracoes.Colecao.PRODUTOS, Produto::copiar);
+        copia.pedidos = copiarMapa(pedidos, alteracoes, Alteracoes.Colecao.PEDIDOS, Pedido::copiar);
+        copia.entregas = copiarMapa(entregas, alteracoes, Alteracoes.Colecao.ENTREGAS, UnaryOperator.identity());
+        copia.sequenciaJournal = sequenciaJournal;
+        copia.contadorUsuarios = contadorUsuarios;
+        copia.contadorEmpresas = contadorEmpresas;
+        copia.contadorProdutos = contadorProdutos;
+        copia.contadorPedidos = contadorPedidos;
+        return copia;
+    }
+
+    /**
+     * Reconstrói os índices a partir das chaves estrangeiras: cada coleção é ordenada por ID
+     * (a ordem de criação) e agrupada em uma única passada. Com paralelo = true os índices
+     * são montados ao mesmo tempo (email e placa na mesma passada pelos usuários).
+     */
+    public void reconstruirIndices(boolean paralelo) {
+        List<Empresa> empresasOrdenadas = ordenar(empresas.values(), Empresa::getId);
+        List<Runnable> tarefas = new ArrayList<>();
+        tarefas.add(() -> {
+            Map<String, Usuario> indice = new HashMap<>(usuarios.size() * 4 / 3 + 1);
+            Map<String, Entregador> placas = new HashMap<>();
+            for (Usuario usuario : ordenar(usuarios.values(), Usuario::getId)) {
+                indice.putIfAbsent(usuario.getEmail(), usuario);
+                if (usuario instanceof Entregador) {
+                    Entregador entregador = (Entregador) usuario;
+                    placas.putIfAbsent(Entregador.normalizarPlaca(entregador.getPlaca()), entregador);
+                }
+            }
+            usuariosPorEmail = indice;
+            entregadoresPorPlaca = placas;
+        });
+        tarefas.add(() -> empresasPorDono = agrupar(empresasOrdenadas, Empresa::getIdDono));
+        tarefas.add(() -> {
+            FacetasEmpresas facetas = new FacetasEmpresas();
+            for (Empresa empresa : empresasOrdenadas) {
+                facetas.adicionar(empresa);
+            }
+            facetasEmpresas = facetas;
+        });
+        tarefas.add(() -> {
+            Map<String, List<Empresa>> porNome = new HashMap<>();
+            Map<List<String>, Empresa> porNomeEndereco = new HashMap<>();
+            for (Empresa empresa : empresasOrdenadas) {
+                porNome.computeIfAbsent(empresa.getNome(), nome -> new ArrayList<>()).add(empresa);
+                porNomeEndereco.putIfAbsent(chaveNomeEndereco(empresa.getNome(), empresa.getEndereco()), empresa);
+            }
+            empresasPorNome = porNome;
+            empresaPorNomeEndereco = porNomeEndereco;
+        });
+        tarefas.add(() -> {
+            List<Produto> produtosOrdenados = ordenar(produtos.values(), Produto::getId);
+            Map<Integer, Map<String, Produto>> porNome = new HashMap<>();
+            for (Produto produto : produtosOrdenados) {
+                porNome.computeIfAbsent(produto.getIdEmpresa(), id -> new HashMap<>()).putIfAbsent(produto.getNome(), produto);
+            }
+            produtosPorRestaurante = agrupar(produtosOrdenados, Produto::getIdEmpresa);
+            produtoPorNome = porNome;
+        });
+        tarefas.add(() -> {
+            BuscaProdutos busca = new BuscaProdutos();
+            for (Produto produto : produtos.values()) {
+                busca.adicionar(produto);
+            }
+            buscaProdutos = busca;
+        });
+        tarefas.add(() -> {
+            CardapioPrecos cardapio = new CardapioPrecos();
+            for (Produto produto : produtos.values()) {
+                cardapio.adicionar(produto);
+            }
+            cardapioPrecos = cardapio;
+        });
+        tarefas.add(() -> {
+            List<Pedido> pedidosOrdenados = ordenar(pedidos.values(), Pedido::getNumero);
+            Map<Long, Pedido> abertos = new HashMap<>();
+            HistoricoPedidos historico = new HistoricoPedidos();
+            for (Pedido pedido : pedidosOrdenados) {
+                historico.registrar(pedido.getIdCliente(), pedido.getIdEmpresa(), pedido.getNumero());
+                if (pedido.getEstado().equals("aberto")) {
+                    abertos.putIfAbsent(chaveClienteEmpresa(pedido.getIdCliente(), pedido.getIdEmpresa()), pedido);
+                }
+            }
+            pedidosPorRestaurante = agrupar(pedidosOrdenados, Pedido::getIdEmpresa);
+            pedidoAbertoPorClienteEmpresa = abertos;
+            historicoPedidos = historico;
+        });
+        tarefas.add(() -> {
+            // Primeiro na ordem de cadastro gravada em cada entregador; vínculos sem essa ordem
+            // (snapshots antigos) entram depois, em ordem de ID da empresa
+            Map<Integer, Map<Integer, Empresa>> indice = new HashMap<>();
+            for (Usuario usuario : usuarios.values()) {
+                if (usuario instanceof Entregador) {
+                    for (int idEmpresa : ((Entregador) usuario).getIdsEmpresas()) {
+                        Empresa empresa = empresas.get(idEmpresa);
+                        if (empresa != null && empresa.temEntregador(usuario.getId())) {
+                            indice.computeIfAbsent(usuario.getId(), id -> new LinkedHashMap<>()).put(idEmpresa, empresa);
+                        }
+                    }
+                }
+            }
+            for (Empresa empresa : empresasOrdenadas) {
+                for (Entregador entregador : empresa.getEntregadores()) {
+                    indice.computeIfAbsent(entregador.getId(), id -> new LinkedHashMap<>()).putIfAbsent(empresa.getId(), empresa);
+                }
+            }
+            empresasPorEntregador = indice;
+        });
+        tarefas.add(() -> {
+            EstadosPedidos estados = new EstadosPedidos();
+            for (Pedido pedido : pedidos.values()) {
+                estados.adicionar(pedido.getIdEmpresa(), pedido.getNumero(), pedido.getEstado());
+            }
+            estadosPedidos = estados;
+            despacho = new Despacho(estados);
+        });
+
+        tarefas.add(() -> {
+            Map<Integer, Entrega> indice = new HashMap<>(entregas.size() * 4 / 3 + 1);
+            for (Entrega entrega : ordenar(entregas.values(), Entrega::getId)) {
+                indice.putIfAbsent(entrega.getIdPedido(), entrega);
+            }
+            entregaPorPedido = indice;
+        });
+
+        if (!paralelo) {
+            tarefas.forEach(Runnable::run);
+            return;
+        }
+        CompletableFuture.allOf(tarefas.stream()
+                .map(CompletableFuture::runAsync)
+                .toArray(CompletableFuture[]::new)).join();
+    }
+
+    // Chave de empresaPorNomeEndereco; aceita null, como os campos da empresa
+    public static List<String> chaveNomeEndereco(String nome, String endereco) {
+        return Arrays.asList(nome, endereco);
+    }
+
+    // Chave de pedidoAbertoPorClienteEmpresa: ID do cliente nos 32 bits altos, da empresa nos baixos
+    public static long chaveClienteEmpresa(int idCliente, int idEmpresa) {
+        return ((long) idCliente << 32) | (idEmpresa & 0xFFFFFFFFL);
+    }
+
+    private static <T> List<T> ordenar(Collection<T> elementos, ToIntFunction<T> id) {
+        List<T> ordenados = new ArrayList<>(elementos);
+        ordenados.sort(Comparator.comparingInt(id));
+        return ordenados;
+    }
+
+    private static <T> Map<Integer, List<T>> agrupar(List<T> elementos, ToIntFunction<T> chave) {
+        Map<Integer, List<T>> indice = new HashMap<>();
+        for (T elemento : elementos) {
+            indice.computeIfAbsent(chave.applyAsInt(elemento), k -> new ArrayList<>()).add(elemento);
+        }
+        return indice;
+    }
+
+    private static <T> Map<Integer, T> copiarMapa(Map<Integer, T> mapa, Alteracoes alteracoes,
+                                                  Alteracoes.Colecao colecao, UnaryOperator<T> copiar) {
+        Map<Integer, T> copia = new HashMap<>();
+        if (alteracoes == null) {
+            for (Map.Entry<Integer, T> entrada : mapa.entrySet()) {
+                copia.put(entrada.getKey(), copiar.apply(entrada.getValue()));
+            }
+            return copia;
+        }
+        for (int id : alteracoes.get(colecao)) {
+            T valor = mapa.get(id);
+            if (valor != null) {
+                copia.put(id, copiar.apply(valor));
+            }
+        }
+        return copia;
+    }
+
+    public Map<Integer, Usuario> getUsuarios() {
+        return usuarios;
+    }
+
+    public void setUsuarios(Map<Integer, Usuario> usuarios) {
+        this.usuarios = usuarios;
+    }
+
+    public Map<Integer, Empresa> getEmpresas() {
+        return empresas;
+    }
+
+    public void setEmpresas(Map<Integer, Empresa> empresas) {
+        this.empresas = empresas;
+    }
+
+    public Map<Integer, List<Empresa>> getEmpresasPorDono() {
+        return empresasPorDono;
+    }
+
+    public Map<Integer, Produto> getProdutos() {
+        return produtos;
+    }
+
+    public void setProdutos(Map<Integer, Produto> produtos) {
+        this.produtos = produtos;
+    }
+
+    public Map<Integer, List<Produto>> getProdutosPorRestaurante() {
+        return produtosPorRestaurante;
+    }
+
+    public Map<Integer, Map<String, Produto>> getProdutoPorNome() {
+        return produtoPorNome;
+    }
+
+    public BuscaProdutos getBuscaProdutos() {
+        return buscaProdutos;
+    }
+
+    public CardapioPrecos getCardapioPrecos() {
+        return cardapioPrecos;
+    }
+
+    public FacetasEmpresas getFacetasEmpresas() {
+        return facetasEmpresas;
+    }
+
+    public Map<Integer, Pedido> getPedidos() {
+        return pedidos;
+    }
+
+    public void setPedidos(Map<Integer, Pedido> pedidos) {
+        this.pedidos = pedidos;
+    }
+
+    public Map<String, List<Empresa>> getEmpresasPorNome() {
+        return empresasPorNome;
+    }
+
+    public Map<List<String>, Empresa> getEmpresaPorNomeEndereco() {
+        return empresaPorNomeEndereco;
+    }
+
+    public Map<String, Usuario> getUsuariosPorEmail() {
+        return usuariosPorEmail;
+    }
+
+    public Map<String, Entregador> getEntregadoresPorPlaca() {
+        return entregadoresPorPlaca;
+    }
+
+    public Map<Integer, List<Pedido>> getPedidosPorRestaurante() {
+        return pedidosPorRestaurante;
+    }
+
+    public Map<Long, Pedido> getPedidoAbertoPorClienteEmpresa() {
+        return pedidoAbertoPorClienteEmpresa;
+    }
+
+    // Só com os pedidos em memória; os arquivados são acrescentados pelo Sistema ao abrir o arquivo
+    public HistoricoPedidos getHistoricoPedidos() {
+        return historicoPedidos;
+    }
+
+    public Map<Integer, Entrega> getEntregaPorPedido() {
+        return entregaPorPedido;
+    }
+
+    // Maior ID de entrega em memória, para restaurar o contador de entregas (0 se não houver)
+    public int getMaiorIdEntrega() {
+        int maior = 0;
+        for (int id : entregas.keySet()) {
+            maior = Math.max(maior, id);
+        }
+        return maior;
+    }
+
+    // Só com os pedidos em memória; os arquivados são acrescentados pelo Sistema ao abrir o arquivo
+    public EstadosPedidos getEstadosPedidos() {
+        return estadosPedidos;
+    }
+
+    public Despacho getDespacho() {
+        return despacho;
+    }
+
+    public Map<Integer, Map<Integer, Empresa>> getEmpresasPorEntregador() {
+        return empresasPorEntregador;
+    }
+
+    public Map<Integer, Entrega> getEntregas() {
+        return entregas;
+    }
+
+    public void setEntregas(Map<Integer, Entrega> entregas) {
+        this.entregas = entregas;
+    }
+
+    public long getSequenciaJournal() {
+        return sequenciaJournal;
+    }
+
+    public void setSequenciaJournal(long sequenciaJournal) {
+        this.sequenciaJournal = sequenciaJournal;
+    }
+
+    public int getContadorUsuarios() {
+        return contadorUsuarios;
+    }
+
+    public void setContadorUsuarios(int contadorUsuarios) {
+        this.contadorUsuarios = contadorUsuarios;
+    }
+
+    public int getContadorEmpresas() {
+        return contadorEmpresas;
+    }
+
+    public void setContadorEmpresas(int contadorEmpresas) {
+        this.contadorEmpresas = contadorEmpresas;
+    }
+
+    public int getContadorProdutos() {
+        return contadorProdutos;
+    }
+
+    public void setContadorProdutos(int contadorProdutos) {
+        this.contadorProdutos = contadorProdutos;
+    }
+
+    public int getContadorPedidos() {
+        return contadorPedidos;
+    }
+
+    public void setContadorPedidos(int contadorPedidos) {
+        this.contadorPedidos = contadorPedidos;
+    }
+
+    public Map<String, Long> getTemposCarregamento() {
+        if (temposCarregamento == null) {
+            temposCarregamento = new LinkedHashMap<>();
+        }
+        return temposCarregamento;
+    }
+
+    public int getDeltasDescartados() {
+        return deltasDescartados;
+    }
+
+    public void setDeltasDescartados(int deltasDescartados) {
+        this.deltasDescartados = deltasDescartados;
+    }
+
+    public long getBytesDescartados() {
+        return bytesDescartados;
+    }
+
+    public void setBytesDescartados(long bytesDescartados) {
+        this.bytesDescartados = bytesDescartados;
+    }
+
+    public long getSequenciaBase() {
+        return sequenciaBase;
+    }
+
+    public void setSequenciaBase(long sequenciaBase) {
+        this.sequenciaBase = sequenciaBase;
+    }
+
+    public boolean isBaseAnterior() {
+        return baseAnterior;
+    }
+
+    public void setBaseAnterior(boolean baseAnterior) {
+        this.baseAnterior = baseAnterior;
+    }
+}
@@ -0,0 +1,901 @@
+package br.ufal.ic.p2.myfood.services;
+
+import br.ufal.ic.p2.myfood.models.*;
+import br.ufal.ic.p2.myfood.services.Alteracoes.Colecao;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32C;
+
+/**
+ * Codec binário do snapshot, alternativo à serialização padrão do Java.
+ * Cada modelo tem um layout explícito e versionado, escrito em uma seção própria:
+ *
+ * <pre>
+ * arquivo: "MYFD" (ou "MYFd" num delta) | versão do formato | sequência do journal | contadores | CRC32C do cabeçalho
+ *          | nº de seções | seções
+ * seção:   tipo (byte) | versão do layout (byte) | tamanho (varint) | CRC32C do conteúdo | conteúdo
+ * </pre>
+ *
+ * Os checksums têm 4 bytes, big-endian. Um checksum que não confere gera IOException, assim
+ * como uma versão do formato diferente da atual: arquivos antigos são regenerados, não migrados.
+ *
+ * Referências entre modelos (entregadores de uma empresa, produtos de um pedido) são gravadas
+ * como IDs e resolvidas na leitura, preservando instâncias compartilhadas. Os índices do
+ * sistema não são gravados: são reconstruídos das chaves estrangeiras das entidades.
+ * Cada seção tem sua própria tabela de strings, o que permite lê-las de forma independente.
+ */
+public class SnapshotCodec {
+
+    public static final byte[] MAGICO = {'M', 'Y', 'F', 'D'};
+    public static final byte[] MAGICO_DELTA = {'M', 'Y', 'F', 'd'};
+    public static final byte[] MAGICO_SEGMENTO = {'M', 'Y', 'F', 'A'};
+    private static final int VERSAO_FORMATO = 2;
+
+    // Tipos de seção
+    private static final int SECAO_USUARIOS = 1;
+    private static final int SECAO_EMPRESAS = 2;
+    private static final int SECAO_PRODUTOS = 3;
+    private static final int SECAO_PEDIDOS = 4;
+    private static final int SECAO_ENTREGAS = 5;
+    // 6 a 9 eram as seções dos índices, hoje reconstruídos na carga
+    private static final String[] NOMES_SECOES = {null, "usuarios", "empresas", "produtos", "pedidos", "entregas"};
+
+    // Versões dos layouts de cada modelo
+    private static final int VERSAO_USUARIO = 2;
+    private static final int VERSAO_EMPRESA = 2;
+    private static final int VERSAO_PRODUTO = 2;
+    private static final int VERSAO_PEDIDO = 3;
+    private static final int VERSAO_ENTREGA = 1;
+    private static final int[] VERSOES_SECOES = {0, VERSAO_USUARIO, VERSAO_EMPRESA, VERSAO_PRODUTO, VERSAO_PEDIDO,
+            VERSAO_ENTREGA};
+
+    // Subtipos gravados no layout de Usuario e Empresa
+    private static final int CLIENTE = 0;
+    private static final int DONO = 1;
+    private static final int ENTREGADOR = 2;
+    private static final int RESTAURANTE = 0;
+    private static final int MERCADO = 1;
+    private static final int FARMACIA = 2;
+
+    public static boolean ehBinario(byte[] dados) {
+        return comecaCom(dados, MAGICO);
+    }
+
+    private static boolean comecaCom(byte[] dados, byte[] magico) {
+        if (dados.length < magico.length) {
+            return false;
+        }
+        for (int i = 0; i < magico.length; i++) {
+            if (dados[i] != magico[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static byte[] codificar(Snapshot snapshot) {
+        return codificar(snapshot, MAGICO, null);
+    }
+
+    /**
+     * Codifica um delta com apenas as entradas marcadas em alteracoes, no mesmo layout do
+     * snapshot completo. Aplicado sobre a base, cada entrada substitui a de mesmo ID.
+     */
+    public static byte[] codificarDelta(Snapshot snapshot, Alteracoes alteracoes) {
+        return codificar(snapshot, MAGICO_DELTA, alteracoes);
+    }
+
+    private static byte[] codificar(Snapshot snapshot, byte[] magico, Alteracoes alteracoes) {
+        EscritorBinario saida = new EscritorBinario();
+        saida.escreverBytes(magico);
+        saida.escreverByte(VERSAO_FORMATO);
+        saida.escreverVarlong(snapshot.getSequenciaJournal());
+        saida.escreverVarint(snapshot.getContadorUsuarios());
+        saida.escreverVarint(snapshot.getContadorEmpresas());
+        saida.escreverVarint(snapshot.getContadorProdutos());
+        saida.escreverVarint(snapshot.getContadorPedidos());
+        saida.escreverFixo32(crc32c(saida.toByteArray()));
+
+        Map<Integer, EscritorBinario> secoes = new LinkedHashMap<>();
+        Map<Integer, Usuario> usuarios = filtrar(snapshot.getUsuarios(), alteracoes, Colecao.USUARIOS);
+        Map<Integer, Empresa> empresas = filtrar(snapshot.getEmpresas(), alteracoes, Colecao.EMPRESAS);
+        Map<Integer, Produto> produtos = filtrar(snapshot.getProdutos(), alteracoes, Colecao.PRODUTOS);
+        Map<Integer, Pedido> pedidos = filtrar(snapshot.getPedidos(), alteracoes, Colecao.PEDIDOS);
+        Map<Integer, Entrega> entregas = filtrar(snapshot.getEntregas(), alteracoes, Colecao.ENTREGAS);
+
+        secoes.put(SECAO_USUARIOS, escreverUsuarios(usuarios));
+        secoes.put(SECAO_EMPRESAS, escreverEmpresas(empresas));
+        secoes.put(SECAO_PRODUTOS, escreverProdutos(produtos));
+        secoes.put(SECAO_PEDIDOS, escreverPedidos(pedidos));
+        secoes.put(SECAO_ENTREGAS, escreverEntregas(entregas));
+
+        // Num delta, seções sem nenhuma entrada alterada não são gravadas
+        if (alteracoes != null) {
+            secoes.values().removeIf(secao -> secao.tamanho() == 1);
+        }
+        escreverSecoes(saida, secoes);
+        return saida.toByteArray();
+    }
+
+    private static void escreverSecoes(EscritorBinario saida, Map<Integer, EscritorBinario> secoes) {
+        saida.escreverVarint(secoes.size());
+        for (Map.Entry<Integer, EscritorBinario> secao : secoes.entrySet()) {
+            byte[] conteudo = secao.getValue().toByteArray();
+            saida.escreverByte(secao.getKey());
+            saida.escreverByte(VERSOES_SECOES[secao.getKey()]);
+            saida.escreverVarint(conteudo.length);
+            saida.escreverFixo32(crc32c(conteudo));
+            saida.escreverBytes(conteudo);
+        }
+    }
+
+    private static int crc32c(byte[] dados) {
+        CRC32C crc = new CRC32C();
+        crc.update(dados, 0, dados.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Codifica um segmento do arquivo de pedidos entregues:
+     *
+     * <pre>
+     * "MYFA" | versão do formato | tamanho do índice (varint) | CRC32C do índice | índice | nº de seções | pedidos | entregas
+     * índice: nº de pedidos | (número, idEmpresa)... | nº de entregas | (id, idPedido)... | idCliente de cada pedido
+     * </pre>
+     *
+     * O índice vem antes dos dados para que a inicialização monte o mapa ID → segmento
+     * lendo só o começo de cada arquivo.
+     */
+    public static byte[] codificarSegmento(Map<Integer, Pedido> pedidos, Map<Integer, Entrega> entregas) {
+        EscritorBinario indice = new EscritorBinario();
+        indice.escreverVarint(pedidos.size());
+        for (Pedido pedido : pedidos.values()) {
+            indice.escreverVarint(pedido.getNumero());
+            indice.escreverVarint(pedido.getIdEmpresa());
+        }
+        indice.escreverVarint(entregas.size());
+        for (Entrega entrega : entregas.values()) {
+            indice.escreverVarint(entrega.getId());
+            indice.escreverVarint(entrega.getIdPedido());
+        }
+        for (Pedido pedido : pedidos.values()) {
+            indice.escreverVarint(pedido.getIdCliente());
+        }
+
+        EscritorBinario saida = new EscritorBinario();
+        saida.escreverBytes(MAGICO_SEGMENTO);
+        saida.escreverByte(VERSAO_FORMATO);
+        byte[] dadosIndice = indice.toByteArray();
+        saida.escreverVarint(dadosIndice.length);
+        saida.escreverFixo32(crc32c(dadosIndice));
+        saida.escreverBytes(dadosIndice);
+        Map<Integer, EscritorBinario> secoes = new LinkedHashMap<>();
+        secoes.put(SECAO_PEDIDOS, escreverPedidos(pedidos));
+        secoes.put(SECAO_ENTREGAS, escreverEntregas(entregas));
+        escreverSecoes(saida, secoes);
+        return saida.toByteArray();
+    }
+
+    // IDs guardados em um segmento, lidos sem decodificar os pedidos
+    public static class IndiceSegmento {
+        private final int[] pedidos;
+        private final int[] empresasDosPedidos;
+        private final int[] entregas;
+        private final int[] pedidosDasEntregas;
+        private final int[] clientesDosPedidos;
+
+        private IndiceSegmento(int[] pedidos, int[] empresasDosPedidos, int[] entregas, int[] pedidosDasEntregas,
+                               int[] clientesDosPedidos) {
+            this.pedidos = pedidos;
+            this.empresasDosPedidos = empresasDosPedidos;
+            this.entregas = entregas;
+            this.pedidosDasEntregas = pedidosDasEntregas;
+            this.clientesDosPedidos = clientesDosPedidos;
+        }
+
+        public int[] getPedidos() {
+            return pedidos;
+        }
+
+        public int[] getEmpresasDosPedidos() {
+            return empresasDosPedidos;
+        }
+
+        public int[] getEntregas() {
+            return entregas;
+        }
+
+        public int[] getPedidosDasEntregas() {
+            return pedidosDasEntregas;
+        }
+
+        public int[] getClientesDosPedidos() {
+            return clientesDosPedidos;
+        }
+    }
+
+    // Lê só o cabeçalho e o índice de um segmento a partir do começo do arquivo
+    public static IndiceSegmento lerIndiceSegmento(InputStream arquivo) throws IOException {
+        byte[] cabecalho = arquivo.readNBytes(MAGICO_SEGMENTO.length + 1);
+        if (!comecaCom(cabecalho, MAGICO_SEGMENTO) || cabecalho.length < MAGICO_SEGMENTO.length + 1) {
+            throw new IOException("Cabecalho de segmento invalido");
+        }
+        int versao = cabecalho[MAGICO_SEGMENTO.length];
+        if (versao != VERSAO_FORMATO) {
+            throw new IOException("Versao de segmento nao suportada: " + versao);
+        }
+        int tamanho = lerVarint(arquivo);
+        int crc = lerFixo32(arquivo);
+        byte[] dados = lerBytes(arquivo, tamanho);
+        if (crc != crc32c(dados)) {
+            throw new IOException("Checksum invalido no indice do segmento");
+        }
+
+        LeitorBinario entrada = new LeitorBinario(dados);
+        int[] pedidos = new int[entrada.lerVarint()];
+        int[] empresas = new int[pedidos.length];
+        for (int i = 0; i < pedidos.length; i++) {
+            pedidos[i] = entrada.lerVarint();
+            empresas[i] = entrada.lerVarint();
+        }
+        int[] entregas = new int[entrada.lerVarint()];
+        int[] pedidosDasEntregas = new int[entregas.length];
+        for (int i = 0; i < entregas.length; i++) {
+            entregas[i] = entrada.lerVarint();
+            pedidosDasEntregas[i] = entrada.lerVarint();
+        }
+        int[] clientes = new int[pedidos.length];
+        for (int i = 0; i < pedidos.length; i++) {
+            clientes[i] = entrada.lerVarint();
+        }
+        return new IndiceSegmento(pedidos, empresas, entregas, pedidosDasEntregas, clientes);
+    }
+
+    /**
+     * Decodifica os pedidos e entregas de um segmento. Os produtos dos pedidos são resolvidos
+     * nos produtos atuais do sistema, que nunca vão para o arquivo.
+     */
+    public static Snapshot decodificarSegmento(InputStream entrada, Map<Integer, Produto> produtos) throws IOException {
+        byte[] cabecalho = entrada.readNBytes(MAGICO_SEGMENTO.length + 1);
+        if (!comecaCom(cabecalho, MAGICO_SEGMENTO) || cabecalho.length < MAGICO_SEGMENTO.length + 1) {
+            throw new IOException("Cabecalho de segmento invalido");
+        }
+        int versao = cabecalho[MAGICO_SEGMENTO.length];
+        if (versao != VERSAO_FORMATO) {
+            throw new IOException("Versao de segmento nao suportada: " + versao);
+        }
+        int tamanhoIndice = lerVarint(entrada);
+        lerFixo32(entrada);
+        entrada.skipNBytes(tamanhoIndice); // Índice, já carregado em memória
+
+        Map<Integer, SecaoLida> secoes = new HashMap<>();
+        lerSecoes(entrada, false, new HashMap<>(), secoes);
+        SecaoLida secaoProdutos = new SecaoLida(SECAO_PRODUTOS);
+        secaoProdutos.entidades = produtos;
+        secoes.put(SECAO_PRODUTOS, secaoProdutos);
+
+        Snapshot segmento = new Snapshot();
+        ligar(segmento, secoes);
+        return segmento;
+    }
+
+    private static <T> Map<Integer, T> filtrar(Map<Integer, T> mapa, Alteracoes alteracoes, Colecao colecao) {
+        if (alteracoes == null) {
+            return mapa;
+        }
+        Map<Integer, T> filtrado = new HashMap<>();
+        for (int id : alteracoes.get(colecao)) {
+            T valor = mapa.get(id);
+            if (valor != null) {
+                filtrado.put(id, valor);
+            }
+        }
+        return filtrado;
+    }
+
+    public static Snapshot decodificar(byte[] dados) throws IOException {
+        return decodificar(new ByteArrayInputStream(dados), Collections.emptyList(), false);
+    }
+
+    /**
+     * Decodifica o snapshot base e aplica os deltas em ordem, em duas etapas: cada seção é
+     * lida de forma independente, deixando as referências como IDs, as entradas dos deltas
+     * substituem as da base, e depois tudo é ligado em uma única passada.
+     * Com paralelo = true as seções são lidas ao mesmo tempo em um pool limitado ao
+     * número de processadores. O tempo de cada etapa fica em getTemposCarregamento().
+     *
+     * Os arquivos são lidos como streams, uma seção por vez, sem carregar o arquivo inteiro.
+     *
+     * Um delta corrompido (checksum ou estrutura inválidos) não impede a carga: ele e os
+     * seguintes, que podem depender dele, são ignorados e contados em getDeltasDescartados().
+     * Já uma base corrompida gera IOException; cabe a {@link SistemaSave} recorrer ao snapshot anterior.
+     */
+    public static Snapshot decodificar(InputStream base, List<Path> deltas, boolean paralelo) throws IOException {
+        Snapshot snapshot = new Snapshot();
+        Map<String, Long> tempos = snapshot.getTemposCarregamento();
+        long inicio = System.nanoTime();
+        Leitura leitura = ler(base, MAGICO, paralelo, tempos);
+        tempos.put("base", System.nanoTime() - inicio);
+        snapshot.setSequenciaBase(leitura.sequenciaJournal);
+
+        inicio = System.nanoTime();
+        for (int i = 0; i < deltas.size(); i++) {
+            Leitura delta;
+            try (InputStream entrada = new BufferedInputStream(Files.newInputStream(deltas.get(i)))) {
+                delta = ler(entrada, MAGICO_DELTA, paralelo, new HashMap<>());
+            } catch (IOException e) {
+                snapshot.setDeltasDescartados(deltas.size() - i);
+                break;
+            }
+            if (delta.sequenciaJournal > leitura.sequenciaJournal) {
+                mesclar(leitura, delta);
+            }
+        }
+        if (!deltas.isEmpty()) {
+            tempos.put("deltas", System.nanoTime() - inicio);
+        }
+
+        snapshot.setSequenciaJournal(leitura.sequenciaJournal);
+        snapshot.setContadorUsuarios(leitura.contadores[0]);
+        snapshot.setContadorEmpresas(leitura.contadores[1]);
+        snapshot.setContadorProdutos(leitura.contadores[2]);
+        snapshot.setContadorPedidos(leitura.contadores[3]);
+
+        inicio = System.nanoTime();
+        ligar(snapshot, leitura.secoes);
+        tempos.put("ligacao", System.nanoTime() - inicio);
+        return snapshot;
+    }
+
+    // Conteúdo de um arquivo (base ou delta) com as seções lidas e ainda não ligadas
+    private static class Leitura {
+        private long sequenciaJournal;
+        private final int[] contadores = new int[4];
+        private final Map<Integer, SecaoLida> secoes = new HashMap<>();
+    }
+
+    private static Leitura ler(InputStream entrada, byte[] magico, boolean paralelo, Map<String, Long> tempos)
+            throws IOException {
+        LeitorBinario cabecalho = lerCabecalho(entrada, magico);
+        Leitura leitura = new Leitura();
+        leitura.sequenciaJournal = cabecalho.lerVarlong();
+        for (int i = 0; i < leitura.contadores.length; i++) {
+            leitura.contadores[i] = cabecalho.lerVarint();
+        }
+        lerSecoes(entrada, paralelo, tempos, leitura.secoes);
+        return leitura;
+    }
+
+    /**
+     * Confere os checksums do cabeçalho e de cada seção de um snapshot completo, sem decodificar
+     * as entidades. Usado para validar um snapshot recém-gravado antes de publicá-lo.
+     */
+    public static void verificar(InputStream entrada) throws IOException {
+        lerCabecalho(entrada, MAGICO);
+        int quantidade = lerVarint(entrada);
+        for (int i = 0; i < quantidade; i++) {
+            lerConteudoSecao(entrada);
+        }
+        if (entrada.read() >= 0) {
+            throw new IOException("Dados depois da ultima secao do snapshot");
+        }
+    }
+
+    // Lê o cabeçalho até o checksum, que é conferido; o leitor devolvido começa na sequência do journal
+    private static LeitorBinario lerCabecalho(InputStream entrada, byte[] magico) throws IOException {
+        byte[] inicio = entrada.readNBytes(magico.length + 1);
+        if (!comecaCom(inicio, magico) || inicio.length < magico.length + 1) {
+            throw new IOException("Cabecalho de snapshot binario invalido");
+        }
+        int versao = inicio[magico.length] & 0xFF;
+        if (versao != VERSAO_FORMATO) {
+            throw new IOException("Versao de snapshot binario nao suportada: " + versao);
+        }
+        ByteArrayOutputStream cabecalho = new ByteArrayOutputStream();
+        cabecalho.write(inicio);
+        copiarVarint(entrada, cabecalho, 10); // Sequência do journal
+        for (int i = 0; i < 4; i++) {
+            copiarVarint(entrada, cabecalho, 5); // Contadores
+        }
+        byte[] dados = cabecalho.toByteArray();
+        if (lerFixo32(entrada) != crc32c(dados)) {
+            throw new IOException("Checksum invalido no cabecalho do snapshot");
+        }
+        return new LeitorBinario(dados, inicio.length, dados.length - inicio.length);
+    }
+
+    private static void lerSecoes(InputStream entrada, boolean paralelo, Map<String, Long> tempos,
+                                  Map<Integer, SecaoLida> secoes) throws IOException {
+        // Em sequência, cada seção é decodificada assim que lida; em paralelo, as leituras esperam o pool
+        int quantidade = lerVarint(entrada);
+        List<Callable<SecaoLida>> leituras = new ArrayList<>();
+        for (int i = 0; i < quantidade; i++) {
+            ConteudoSecao conteudo = lerConteudoSecao(entrada);
+            Callable<SecaoLida> leitura = () -> lerSecao(conteudo.tipo, conteudo.versao, new LeitorBinario(conteudo.dados));
+            if (paralelo) {
+                leituras.add(leitura);
+            } else {
+                guardar(executar(List.of(leitura), false), tempos, secoes);
+            }
+        }
+        guardar(executar(leituras, paralelo), tempos, secoes);
+    }
+
+    private static void guardar(List<SecaoLida> lidas, Map<String, Long> tempos, Map<Integer, SecaoLida> secoes) {
+        for (SecaoLida secao : lidas) {
+            if (secao != null) {
+                secoes.put(secao.tipo, secao);
+                tempos.put(NOMES_SECOES[secao.tipo], secao.nanos);
+            }
+        }
+    }
+
+    // Bytes de uma seção, com o checksum já conferido
+    private static class ConteudoSecao {
+        private final int tipo;
+        private final int versao;
+        private final byte[] dados;
+
+        private ConteudoSecao(int tipo, int versao, byte[] dados) {
+            this.tipo = tipo;
+            this.versao = versao;
+            this.dados = dados;
+        }
+    }
+
+    private static ConteudoSecao lerConteudoSecao(InputStream entrada) throws IOException {
+        int tipo = lerByte(entrada);
+        int versao = lerByte(entrada);
+        int tamanho = lerVarint(entrada);
+        int crc = lerFixo32(entrada);
+        byte[] dados = lerBytes(entrada, tamanho);
+        if (crc32c(dados) != crc) {
+            throw new IOException("Checksum invalido na secao " + tipo + " do snapshot");
+        }
+        return new ConteudoSecao(tipo, versao, dados);
+    }
+
+    private static int lerByte(InputStream entrada) throws IOException {
+        int b = entrada.read();
+        if (b < 0) {
+            throw new IOException("Fim inesperado dos dados binarios");
+        }
+        return b;
+    }
+
+    private static int lerVarint(InputStream entrada) throws IOException {
+        int valor = 0;
+        for (int deslocamento = 0; deslocamento < 32; deslocamento += 7) {
+            int b = lerByte(entrada);
+            valor |= (b & 0x7F) << deslocamento;
+            if ((b & 0x80) == 0) {
+                return valor;
+            }
+        }
+        throw new IOException("Varint malformado");
+    }
+
+    // Copia os bytes de um varint sem decodificá-lo, para o checksum do cabeçalho
+    private static void copiarVarint(InputStream entrada, ByteArrayOutputStream destino, int maximo) throws IOException {
+        for (int i = 0; i < maximo; i++) {
+            int b = lerByte(entrada);
+            destino.write(b);
+            if ((b & 0x80) == 0) {
+                return;
+            }
+        }
+        throw new IOException("Varint malformado");
+    }
+
+    private static int lerFixo32(InputStream entrada) throws IOException {
+        return new LeitorBinario(lerBytes(entrada, 4)).lerFixo32();
+    }
+
+    // readNBytes cresce conforme os dados chegam, então um tamanho corrompido não aloca o valor pedido
+    private static byte[] lerBytes(InputStream entrada, int tamanho) throws IOException {
+        if (tamanho < 0) {
+            throw new IOException("Tamanho invalido nos dados binarios: " + tamanho);
+        }
+        byte[] dados = entrada.readNBytes(tamanho);
+        if (dados.length != tamanho) {
+            throw new IOException("Fim inesperado dos dados binarios");
+        }
+        return dados;
+    }
+
+    // As entradas do delta substituem as da base com o mesmo ID; os índices são reconstruídos depois da mescla
+    @SuppressWarnings("unchecked")
+    private static void mesclar(Leitura base, Leitura delta) {
+        base.sequenciaJournal = delta.sequenciaJournal;
+        System.arraycopy(delta.contadores, 0, base.contadores, 0, base.contadores.length);
+        for (SecaoLida secao : delta.secoes.values()) {
+            SecaoLida existente = base.secoes.get(secao.tipo);
+            if (existente == null) {
+                base.secoes.put(secao.tipo, secao);
+                continue;
+            }
+            ((Map<Integer, Object>) existente.entidades).putAll(secao.entidades);
+            existente.referencias.putAll(secao.referencias);
+        }
+    }
+
+    // Resultado da leitura de uma seção: entidades já construídas e referências ainda como IDs
+    private static class SecaoLida {
+        private final int tipo;
+        private Map<Integer, ?> entidades = new HashMap<>();
+        private final Map<Integer, int[]> referencias = new HashMap<>();
+        private long nanos;
+
+        private SecaoLida(int tipo) {
+            this.tipo = tipo;
+        }
+    }
+
+    private static List<SecaoLida> executar(List<Callable<SecaoLida>> leituras, boolean paralelo) throws IOException {
+        List<SecaoLida> resultado = new ArrayList<>();
+        if (!paralelo) {
+            for (Callable<SecaoLida> leitura : leituras) {
+                try {
+                    resultado.add(leitura.call());
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+            }
+            return resultado;
+        }
+
+        int threads = Math.max(1, Math.min(leituras.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "snapshot-leitura");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (Future<SecaoLida> futuro : executor.invokeAll(leituras)) {
+                resultado.add(futuro.get());
+            }
+            return resultado;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Carregamento do snapshot interrompido");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static SecaoLida lerSecao(int tipo, int versao, LeitorBinario entrada) throws IOException {
+        long inicio = System.nanoTime();
+        SecaoLida secao = new SecaoLida(tipo);
+        switch (tipo) {
+            case SECAO_USUARIOS:
+                exigirVersao(tipo, versao, VERSAO_USUARIO);
+                secao.entidades = lerUsuarios(entrada);
+                break;
+            case SECAO_EMPRESAS:
+                exigirVersao(tipo, versao, VERSAO_EMPRESA);
+                secao.entidades = lerEmpresas(entrada, secao.referencias);
+                break;
+            case SECAO_PRODUTOS:
+                exigirVersao(tipo, versao, VERSAO_PRODUTO);
+                secao.entidades = lerProdutos(entrada);
+                break;
+            case SECAO_PEDIDOS:
+                exigirVersao(tipo, versao, VERSAO_PEDIDO);
+                secao.entidades = lerPedidos(entrada, secao.referencias);
+                break;
+            case SECAO_ENTREGAS:
+                exigirVersao(tipo, versao, VERSAO_ENTREGA);
+                secao.entidades = lerEntregas(entrada);
+                break;
+            default:
+                // Seção desconhecida (gravada por uma versão mais nova, ou um índice antigo): ignorada
+                return null;
+        }
+        secao.nanos = System.nanoTime() - inicio;
+        return secao;
+    }
+
+    // Resolve os IDs lidos em cada seção para as instâncias compartilhadas
+    @SuppressWarnings("unchecked")
+    private static void ligar(Snapshot snapshot, Map<Integer, SecaoLida> secoes) throws IOException {
+        Map<Integer, Usuario> usuarios = (Map<Integer, Usuario>) entidades(secoes, SECAO_USUARIOS);
+        Map<Integer, Empresa> empresas = (Map<Integer, Empresa>) entidades(secoes, SECAO_EMPRESAS);
+        Map<Integer, Produto> produtos = (Map<Integer, Produto>) entidades(secoes, SECAO_PRODUTOS);
+        Map<Integer, Pedido> pedidos = (Map<Integer, Pedido>) entidades(secoes, SECAO_PEDIDOS);
+
+        for (Map.Entry<Integer, int[]> entrada : referencias(secoes, SECAO_EMPRESAS).entrySet()) {
+            Empresa empresa = empresas.get(entrada.getKey());
+            for (int id : entrada.getValue()) {
+                empresa.adicionarEntregador((Entregador) resolver(usuarios, id));
+            }
+        }
+        for (Map.Entry<Integer, int[]> entrada : referencias(secoes, SECAO_PEDIDOS).entrySet()) {
+            List<Produto> itens = pedidos.get(entrada.getKey()).getProdutos();
+            for (int id : entrada.getValue()) {
+                itens.add(resolver(produtos, id));
+            }
+        }
+
+        snapshot.setUsuarios(usuarios);
+        snapshot.setEmpresas(empresas);
+        snapshot.setProdutos(produtos);
+        snapshot.setPedidos(pedidos);
+        snapshot.setEntregas((Map<Integer, Entrega>) entidades(secoes, SECAO_ENTREGAS));
+    }
+
+    private static Map<Integer, ?> entidades(Map<Integer, SecaoLida> secoes, int tipo) {
+        SecaoLida secao = secoes.get(tipo);
+        return secao == null ? new HashMap<>() : secao.entidades;
+    }
+
+    private static Map<Integer, int[]> referencias(Map<Integer, SecaoLida> secoes, int tipo) {
+        SecaoLida secao = secoes.get(tipo);
+        return secao == null ? new HashMap<>() : secao.referencias;
+    }
+
+    private static int[] lerIds(LeitorBinario entrada) throws IOException {
+        int[] ids = new int[entrada.lerVarint()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = entrada.lerVarint();
+        }
+        return ids;
+    }
+
+    private static void exigirVersao(int tipo, int versao, int esperada) throws IOException {
+        if (versao != esperada) {
+            throw new IOException("Versao " + versao + " nao suportada para a secao " + tipo);
+        }
+    }
+
+    // ---- Usuario (v2): id | subtipo | nome | email | senha | endereco | cpf ou veiculo, placa, ids das empresas
+    // A v1 não tinha os IDs das empresas do entregador; como nas outras seções, só a versão atual é lida
+
+    private static EscritorBinario escreverUsuarios(Map<Integer, Usuario> usuarios) {
+        EscritorBinario saida = new EscritorBinario();
+        saida.escreverVarint(usuarios.size());
+        for (Usuario usuario : usuarios.values()) {
+            saida.escreverVarint(usuario.getId());
+            if (usuario instanceof DonoRestaurante) {
+                saida.escreverByte(DONO);
+            } else if (usuario instanceof Entregador) {
+                saida.escreverByte(ENTREGADOR);
+            } else {
+                saida.escreverByte(CLIENTE);
+            }
+            saida.escreverString(usuario.getNome());
+            saida.escreverString(usuario.getEmail());
+            saida.escreverString(usuario.getSenha());
+            saida.escreverString(usuario.getEndereco());
+            if (usuario instanceof DonoRestaurante) {
+                saida.escreverString(((DonoRestaurante) usuario).getCpf());
+            } else if (usuario instanceof Entregador) {
+                saida.escreverString(((Entregador) usuario).getVeiculo());
+                saida.escreverString(((Entregador) usuario).getPlaca());
+                List<Integer> idsEmpresas = ((Entregador) usuario).getIdsEmpresas();
+                saida.escreverVarint(idsEmpresas.size());
+                for (int idEmpresa : idsEmpresas) {
+                    saida.escreverVarint(idEmpresa);
+                }
+            }
+        }
+        return saida;
+    }
+
+    private static Map<Integer, Usuario> lerUsuarios(LeitorBinario entrada) throws IOException {
+        int quantidade = entrada.lerVarint();
+        Map<Integer, Usuario> usuarios = new HashMap<>();
+        for (int i = 0; i < quantidade; i++) {
+            int id = entrada.lerVarint();
+            int subtipo = entrada.lerByte();
+            String nome = entrada.lerString();
+            String email = entrada.lerString();
+            String senha = entrada.lerString();
+            String endereco = entrada.lerString();
+            Usuario usuario;
+            switch (subtipo) {
+                case CLIENTE:
+                    usuario = new Cliente(id, nome, email, senha, endereco);
+                    break;
+                case DONO:
+                    usuario = new DonoRestaurante(id, nome, email, senha, endereco, entrada.lerString());
+                    break;
+                case ENTREGADOR:
+                    Entregador entregador = new Entregador(id, nome, email, senha, endereco, entrada.lerString(), entrada.lerString());
+                    List<Integer> idsEmpresas = new ArrayList<>();
+                    for (int idEmpresa : lerIds(entrada)) {
+                        idsEmpresas.add(idEmpresa);
+                    }
+                    entregador.setIdsEmpresas(idsEmpresas);
+                    usuario = entregador;
+                    break;
+                default:
+                    throw new IOException("Tipo de usuario desconhecido: " + subtipo);
+            }
+            usuarios.put(id, usuario);
+        }
+        return usuarios;
+    }
+
+    // ---- Empresa (v2): id | subtipo | idDono | tipoEmpresa | nome | endereco | campos do subtipo | ids dos entregadores
+
+    private static EscritorBinario escreverEmpresas(Map<Integer, Empresa> empresas) {
+        EscritorBinario saida = new EscritorBinario();
+        saida.escreverVarint(empresas.size());
+        for (Empresa empresa : empresas.values()) {
+            saida.escreverVarint(empresa.getId());
+            if (empresa instanceof Mercado) {
+                saida.escreverByte(MERCADO);
+            } else if (empresa instanceof Farmacia) {
+                saida.escreverByte(FARMACIA);
+            } else {
+                saida.escreverByte(RESTAURANTE);
+            }
+            saida.escreverVarint(empresa.getIdDono());
+            saida.escreverString(empresa.getTipoEmpresa());
+            saida.escreverString(empresa.getNome());
+            saida.escreverString(empresa.getEndereco());
+            if (empresa instanceof Mercado) {
+                Mercado mercado = (Mercado) empresa;
+                saida.escreverString(mercado.getAbre());
+                saida.escreverString(mercado.getFecha());
+                saida.escreverString(mercado.getTipoMercado());
+            } else if (empresa instanceof Farmacia) {
+                Farmacia farmacia = (Farmacia) empresa;
+                saida.escreverBoolean(farmacia.getAberto24Horas());
+                saida.escreverInt(farmacia.getNumeroFuncionarios());
+            } else {
+                saida.escreverString(((Restaurante) empresa).getTipoCozinha());
+            }
+            Collection<Entregador> entregadores = empresa.getEntregadores();
+            saida.escreverVarint(entregadores.size());
+            for (Entregador entregador : entregadores) {
+                saida.escreverVarint(entregador.getId());
+            }
+        }
+        return saida;
+    }
+
+    private static Map<Integer, Empresa> lerEmpresas(LeitorBinario entrada, Map<Integer, int[]> entregadores)
+            throws IOException {
+        int quantidade = entrada.lerVarint();
+        Map<Integer, Empresa> empresas = new HashMap<>();
+        for (int i = 0; i < quantidade; i++) {
+            int id = entrada.lerVarint();
+            int subtipo = entrada.lerByte();
+            int idDono = entrada.lerVarint();
+            String tipoEmpresa = entrada.lerString();
+            String nome = entrada.lerString();
+            String endereco = entrada.lerString();
+            Empresa empresa;
+            switch (subtipo) {
+                case RESTAURANTE:
+                    empresa = new Restaurante(id, idDono, tipoEmpresa, nome, endereco, entrada.lerString());
+                    break;
+                case MERCADO:
+                    empresa = new Mercado(id, idDono, tipoEmpresa, nome, endereco,
+                            entrada.lerString(), entrada.lerString(), entrada.lerString());
+                    break;
+                case FARMACIA:
+                    empresa = new Farmacia(id, idDono, tipoEmpresa, nome, endereco, entrada.lerBoolean(), entrada.lerInt());
+                    break;
+                default:
+                    throw new IOException("Tipo de empresa desconhecido: " + subtipo);
+            }
+            entregadores.put(id, lerIds(entrada));
+            empresas.put(id, empresa);
+        }
+        return empresas;
+    }
+
+    // ---- Produto (v2): id | idEmpresa | nome | valor | categoria
+
+    private static EscritorBinario escreverProdutos(Map<Integer, Produto> produtos) {
+        EscritorBinario saida = new EscritorBinario();
+        saida.escreverVarint(produtos.size());
+        for (Produto produto : produtos.values()) {
+            saida.escreverVarint(produto.getId());
+            saida.escreverVarint(produto.getIdEmpresa());
+            saida.escreverString(produto.getNome());
+            saida.escreverFloat(produto.getValor());
+            saida.escreverString(produto.getCategoria());
+        }
+        return saida;
+    }
+
+    private static Map<Integer, Produto> lerProdutos(LeitorBinario entrada) throws IOException {
+        int quantidade = entrada.lerVarint();
+        Map<Integer, Produto> produtos = new HashMap<>();
+        for (int i = 0; i < quantidade; i++) {
+            int id = entrada.lerVarint();
+            int idEmpresa = entrada.lerVarint();
+            produtos.put(id, new Produto(id, idEmpresa, entrada.lerString(), entrada.lerFloat(), entrada.lerString()));
+        }
+        return produtos;
+    }
+
+    // ---- Pedido (v3): numero | idCliente | idEmpresa | estado | valor | ids dos produtos
+    // A v2 gravava o nome do cliente e o da empresa como strings. Só a versão exata é lida: um leitor
+    // da v2 recusa uma seção v3, e este leitor recusa dados v2, com IOException nos dois casos
+
+    private static EscritorBinario escreverPedidos(Map<Integer, Pedido> pedidos) {
+        EscritorBinario saida = new EscritorBinario();
+        saida.escreverVarint(pedidos.size());
+        for (Pedido pedido : pedidos.values()) {
+            saida.escreverVarint(pedido.getNumero());
+            saida.escreverVarint(pedido.getIdCliente());
+            saida.escreverVarint(pedido.getIdEmpresa());
+            saida.escreverString(pedido.getEstado());
+            saida.escreverFloat(pedido.getValor());
+            saida.escreverVarint(pedido.getProdutos().size());
+            for (Produto produto : pedido.getProdutos()) {
+                saida.escreverVarint(produto.getId());
+            }
+        }
+        return saida;
+    }
+
+    private static Map<Integer, Pedido> lerPedidos(LeitorBinario entrada, Map<Integer, int[]> itens)
+            throws IOException {
+        int quantidade = entrada.lerVarint();
+        Map<Integer, Pedido> pedidos = new HashMap<>();
+        for (int i = 0; i < quantidade; i++) {
+            int numero = entrada.lerVarint();
+            int idCliente = entrada.lerVarint();
+            int idEmpresa = entrada.lerVarint();
+            String estado = entrada.lerString();
+            float valor = entrada.lerFloat();
+            int[] idsProdutos = lerIds(entrada);
+            itens.put(numero, idsProdutos);
+            pedidos.put(numero, new Pedido(numero, idCliente, idEmpresa, estado, new ArrayList<>(idsProdutos.length), valor));
+        }
+        return pedidos;
+    }
+
+    // ---- Entrega (v1): id | idPedido | idEntregador | destino
+
+    private static EscritorBinario escreverEntregas(Map<Integer, Entrega> entregas) {
+        EscritorBinario saida = new EscritorBinario();
+        saida.escreverVarint(entregas.size());
+        for (Entrega entrega : entregas.values()) {
+            saida.escreverVarint(entrega.getId());
+            saida.escreverVarint(entrega.getIdPedido());
+            saida.escreverVarint(entrega.getIdEntregador());
+            saida.escreverString(entrega.getDestino());
+        }
+        return saida;
+    }
+
+    private static Map<Integer, Entrega> lerEntregas(LeitorBinario entrada) throws IOException {
+        int quantidade = entrada.lerVarint();
+        Map<Integer, Entrega> entregas = new HashMap<>();
+        for (int i = 0; i < quantidade; i++) {
+            int id = entrada.lerVarint();
+            entregas.put(id, new Entrega(id, entrada.lerVarint(), entrada.lerVarint(), entrada.lerString()));
+        }
+        return entregas;
+    }
+
+    private static <T> T resolver(Map<Integer, ? extends T> mapa, int id) throws IOException {
+        T elemento = mapa.get(id);
+        if (elemento == null) {
+            throw new IOException("Referencia para o ID " + id + " nao encontrada no snapshot");
+        }
+        return elemento;
+    }
+}